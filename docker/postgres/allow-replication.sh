@@ -0,0 +1,4 @@
+#!/bin/bash
+# Lets the replica service stream WAL from the primary; only used by compose.yml for local testing
+set -e
+echo "host replication all all scram-sha-256" >> "$PGDATA/pg_hba.conf"
@@ -0,0 +1,47 @@
+package com.example.benchmark;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic, reproducible documents that look roughly like the constitution chunks in the vector store.
+ */
+final class Corpus {
+
+    private static final String[] WORDS = {
+            "article", "assembly", "citizen", "constitution", "court", "election", "freedom", "government",
+            "law", "minister", "national", "parliament", "president", "republic", "right", "state",
+            "supreme", "territory", "vote", "bulgaria", "sofia", "council", "judicial", "power",
+            "protection", "property", "religion", "language", "municipality", "budget", "tax", "treaty"
+    };
+
+    private Corpus() {
+    }
+
+    static List<Document> documents(int count, int wordsPerDocument, long seed) {
+
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(new Document(sentence(random, wordsPerDocument),
+                    Map.of("page_number", i % 200, "file_name", "synthetic.pdf")));
+        }
+        return documents;
+    }
+
+    static String sentence(SplittableRandom random, int words) {
+
+        StringBuilder text = new StringBuilder(words * 8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.benchmark;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+
+/**
+ * Chat model that answers every prompt with the same text, used to measure the client-side cost of a call.
+ */
+public class FakeChatModel implements ChatModel {
+
+    private final String answer;
+
+    public FakeChatModel(String answer) {
+
+        this.answer = answer;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(answer))));
+    }
+}
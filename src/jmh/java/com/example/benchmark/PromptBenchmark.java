@@ -0,0 +1,70 @@
+package com.example.benchmark;
+
+import com.example.constant.PromptConstant;
+import com.example.service.RetrievalService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the RAG context and rendering the prompt templates used by the controllers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PromptBenchmark {
+
+    @Param({"5", "20"})
+    public int documentCount;
+
+    private List<Document> documents;
+    private String context;
+    private Resource celebPrompt;
+
+    @Setup
+    public void setUp() {
+
+        documents = Corpus.documents(documentCount, 150, 42);
+        context = RetrievalService.joinDocuments(documents);
+        celebPrompt = new ClassPathResource("prompts/celeb-details.st");
+    }
+
+    @Benchmark
+    public String joinContext() {
+
+        return RetrievalService.joinDocuments(documents);
+    }
+
+    @Benchmark
+    public Prompt renderRagPrompt() {
+
+        return new PromptTemplate(PromptConstant.RAG_PROMPT_TEMPLATE)
+                .create(Map.of("input", "What is the capital of Bulgaria?", "documents", context));
+    }
+
+    @Benchmark
+    public Prompt renderCelebPrompt() {
+
+        return new PromptTemplate(celebPrompt).create(Map.of("name", "Albert Einstein"));
+    }
+}
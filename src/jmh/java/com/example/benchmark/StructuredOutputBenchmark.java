@@ -0,0 +1,94 @@
+package com.example.benchmark;
+
+import com.example.model.Achievement;
+import com.example.model.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.core.ParameterizedTypeReference;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing model output into {@link Player} and {@link Achievement} the way the chat endpoints do, with a
+ * fake chat model so only the client-side work is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StructuredOutputBenchmark {
+
+    private static final String PLAYER_JSON = """
+            {
+              "playerName": "Lionel Andrés Messi",
+              "achievements": [
+                "FIFA World Cup winner (2022)",
+                "Eight Ballon d'Or awards",
+                "Four UEFA Champions League titles",
+                "Copa América winner (2021, 2024)",
+                "All-time top scorer of FC Barcelona"
+              ]
+            }
+            """;
+
+    private static final String ACHIEVEMENTS_JSON = """
+            ```json
+            [
+              {"achievement": "FIFA World Cup winner (2022)"},
+              {"achievement": "Eight Ballon d'Or awards"},
+              {"achievement": "Four UEFA Champions League titles"}
+            ]
+            ```
+            """;
+
+    private BeanOutputConverter<Player> playerConverter;
+    private ChatClient playerClient;
+    private ChatClient achievementsClient;
+
+    @Setup
+    public void setUp() {
+
+        playerConverter = new BeanOutputConverter<>(Player.class);
+        playerClient = ChatClient.create(new FakeChatModel(PLAYER_JSON));
+        achievementsClient = ChatClient.create(new FakeChatModel(ACHIEVEMENTS_JSON));
+    }
+
+    @Benchmark
+    public Player convertPlayer() {
+
+        return playerConverter.convert(PLAYER_JSON);
+    }
+
+    @Benchmark
+    public Player convertPlayerWithNewConverter() {
+        // AIChatController creates the converter, and with it the JSON schema, on every request
+        return new BeanOutputConverter<>(Player.class).convert(PLAYER_JSON);
+    }
+
+    @Benchmark
+    public Player chatClientPlayerEntity() {
+
+        return playerClient.prompt("Lionel Messi").call().entity(Player.class);
+    }
+
+    @Benchmark
+    public List<Achievement> chatClientAchievementsEntity() {
+
+        return achievementsClient.prompt("Lionel Messi").call()
+                .entity(new ParameterizedTypeReference<List<Achievement>>() {
+                });
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.benchmark;
+
+import com.example.service.RetrievalService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-K similarity search over an in-memory {@link SimpleVectorStore} filled with synthetic documents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class VectorSearchBenchmark {
+
+    private static final int QUERY_COUNT = 64;
+    private static final int ADD_BATCH = 10_000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int corpusSize;
+
+    @Param({"256"})
+    public int dimensions;
+
+    @Param({"5"})
+    public int topK;
+
+    private SimpleVectorStore vectorStore;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        vectorStore = SimpleVectorStore.builder(new FakeEmbeddingModel(dimensions)).build();
+        List<Document> documents = Corpus.documents(corpusSize, 40, 42);
+        for (int from = 0; from < documents.size(); from += ADD_BATCH) {
+            vectorStore.add(documents.subList(from, Math.min(documents.size(), from + ADD_BATCH)));
+        }
+
+        SplittableRandom random = new SplittableRandom(7);
+        queries = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = Corpus.sentence(random, 8);
+        }
+    }
+
+    @Benchmark
+    public List<Document> similaritySearch() {
+
+        return vectorStore.similaritySearch(SearchRequest.builder()
+                .query(nextQuery())
+                .topK(topK)
+                .build());
+    }
+
+    /**
+     * Search plus the context join the RAG prompt uses, see {@link RetrievalService#joinDocuments}.
+     */
+    @Benchmark
+    public String searchAndJoin() {
+
+        return RetrievalService.joinDocuments(vectorStore.similaritySearch(SearchRequest.builder()
+                .query(nextQuery())
+                .topK(RetrievalService.TOP_K)
+                .build()));
+    }
+
+    private String nextQuery() {
+
+        return queries[next++ & (QUERY_COUNT - 1)];
+    }
+}
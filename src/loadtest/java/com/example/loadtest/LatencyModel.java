@@ -0,0 +1,50 @@
+package com.example.loadtest;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Log-normal latency described by its median and 99th percentile, which is close to how hosted model
+ * latencies are distributed: most calls near the median and a long tail.
+ */
+public record LatencyModel(Duration median, Duration p99) {
+
+    private static final double Z_99 = 2.326;
+
+    public static LatencyModel parse(String value) {
+        // "800ms/4s" -> median 800ms, p99 4s
+        String[] parts = value.split("/");
+        Duration median = parseDuration(parts[0]);
+        Duration p99 = parts.length > 1 ? parseDuration(parts[1]) : median;
+        return new LatencyModel(median, p99);
+    }
+
+    public Duration sample() {
+
+        double mu = Math.log(Math.max(1, median.toMillis()));
+        double sigma = Math.max(0, (Math.log(Math.max(1, p99.toMillis())) - mu) / Z_99);
+        double millis = Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+        return Duration.ofMillis(Math.round(millis));
+    }
+
+    static Duration parseDuration(String value) {
+
+        String text = value.trim().toLowerCase();
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        if (text.endsWith("s")) {
+            return Duration.ofMillis(Math.round(Double.parseDouble(text.substring(0, text.length() - 1)) * 1000));
+        }
+        if (text.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(text.substring(0, text.length() - 1)));
+        }
+        return Duration.ofMillis(Long.parseLong(text));
+    }
+
+    @Override
+    public String toString() {
+
+        return median.toMillis() + "ms/" + p99.toMillis() + "ms";
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.loadtest;
+
+import com.example.Application;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load test of the controller endpoints. By default it starts the {@link OpenAiStubServer} and
+ * the application pointed at it, then runs {@code users} virtual users that each send one request after the
+ * other for the warmup and measurement period. It reports throughput and latency percentiles per scenario,
+ * writes the full latency histograms and samples the HTTP client, JDBC and Tomcat pools from the actuator.
+ * <p>
+ * Pass {@code target=http://host:port} to load an application that is already running instead; arguments
+ * prefixed with {@code app.} are handed to the embedded application, e.g. {@code app.spring.datasource.url=...}.
+ */
+public class LoadTestDriver {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestDriver.class);
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final List<PoolGauge> POOL_GAUGES = List.of(
+            new PoolGauge("openai.leased", "httpcomponents.httpclient.pool.total.connections", "state:leased"),
+            new PoolGauge("openai.pending", "httpcomponents.httpclient.pool.total.pending", null),
+            new PoolGauge("openai.max", "httpcomponents.httpclient.pool.total.max", null),
+            new PoolGauge("jdbc.active", "hikaricp.connections.active", null),
+            new PoolGauge("jdbc.pending", "hikaricp.connections.pending", null),
+            new PoolGauge("jdbc.max", "hikaricp.connections.max", null),
+            new PoolGauge("tomcat.busy", "tomcat.threads.busy", null),
+            new PoolGauge("tomcat.max", "tomcat.threads.config.max", null));
+
+    private final LoadTestSettings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    private final Map<Scenario, Histogram> histograms = new EnumMap<>(Scenario.class);
+    private final Map<Scenario, Map<Integer, AtomicLong>> failures = new EnumMap<>(Scenario.class);
+    private final Map<String, GaugeStats> poolStats = new LinkedHashMap<>();
+
+    public LoadTestDriver(LoadTestSettings settings) {
+
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        new LoadTestDriver(LoadTestSettings.parse(args)).run();
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+
+        int users = settings.intValue("users", 20);
+        Duration warmup = settings.duration("warmup", "10s");
+        Duration duration = settings.duration("duration", "60s");
+        Duration think = settings.duration("think", "0ms");
+        List<Scenario> scenarios = settings.list("scenarios", "chat,player,rag,audio,image,describe").stream()
+                .map(Scenario::of)
+                .toList();
+        for (Scenario scenario : scenarios) {
+            histograms.put(scenario, new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3));
+            failures.put(scenario, new ConcurrentHashMap<>());
+        }
+
+        OpenAiStubServer stub = null;
+        ConfigurableApplicationContext application = null;
+        URI target;
+        if (settings.values().containsKey("target")) {
+            target = URI.create(settings.value("target", null));
+        } else {
+            stub = new OpenAiStubServer(0, settings.stubLatencies(), settings.doubleValue("stub.errors", 0));
+            stub.start();
+            application = startApplication(stub.baseUrl());
+            target = URI.create("http://localhost:" + application.getEnvironment().getProperty("local.server.port"));
+        }
+
+        try {
+            logger.info("Running {} users against {} for {} after {} warmup: {}", users, target, duration, warmup,
+                    scenarios);
+            long measureFrom = System.nanoTime() + warmup.toNanos();
+            long measureUntil = measureFrom + duration.toNanos();
+
+            try (ExecutorService sampler = Executors.newSingleThreadExecutor();
+                 ExecutorService virtualUsers = Executors.newVirtualThreadPerTaskExecutor()) {
+                sampler.submit(() -> samplePools(target, measureFrom, measureUntil));
+                for (int i = 0; i < users; i++) {
+                    virtualUsers.submit(() -> user(target, scenarios, think, measureFrom, measureUntil));
+                }
+            }
+
+            report(scenarios, users, duration, stub);
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+            if (stub != null) {
+                stub.close();
+            }
+        }
+    }
+
+    private ConfigurableApplicationContext startApplication(String stubUrl) {
+
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.ai.openai.base-url=" + stubUrl,
+                "--spring.ai.openai.api-key=stub",
+                "--spring.ai.openai.organization-id=",
+                "--spring.ai.openai.project-id=",
+                "--server.port=0",
+                "--server.tomcat.mbeanregistry.enabled=true",
+                "--image.store.directory=target/loadtest/generated-images"));
+        settings.values().forEach((key, value) -> {
+            if (key.startsWith("app.")) {
+                args.add("--" + key.substring("app.".length()) + "=" + value);
+            }
+        });
+        return new SpringApplicationBuilder(Application.class).run(args.toArray(String[]::new));
+    }
+
+    private void user(URI target, List<Scenario> scenarios, Duration think, long measureFrom, long measureUntil) {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < measureUntil) {
+            Scenario scenario = scenarios.get(random.nextInt(scenarios.size()));
+            HttpRequest request = scenario.request(target, random).build();
+
+            long start = System.nanoTime();
+            int status;
+            try {
+                status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long end = System.nanoTime();
+
+            // Requests that started during warmup or ended after the window are not part of the result
+            if (start >= measureFrom && end <= measureUntil) {
+                if (status >= 200 && status < 300) {
+                    histograms.get(scenario).recordValue(Math.min(HIGHEST_LATENCY_MICROS, (end - start) / 1000));
+                } else {
+                    failures.get(scenario).computeIfAbsent(status, key -> new AtomicLong()).incrementAndGet();
+                }
+            }
+
+            if (!think.isZero()) {
+                try {
+                    Thread.sleep(think);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void samplePools(URI target, long measureFrom, long measureUntil) {
+
+        while (System.nanoTime() < measureUntil) {
+            if (System.nanoTime() >= measureFrom) {
+                for (PoolGauge gauge : POOL_GAUGES) {
+                    Double value = readMetric(target, gauge);
+                    if (value != null) {
+                        poolStats.computeIfAbsent(gauge.label(), key -> new GaugeStats()).add(value);
+                    }
+                }
+            }
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private Double readMetric(URI target, PoolGauge gauge) {
+
+        String query = gauge.tag() == null ? "" : "?tag=" + gauge.tag();
+        HttpRequest request = HttpRequest.newBuilder(target.resolve("/actuator/metrics/" + gauge.metric() + query))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return null;
+            }
+            JsonNode measurements = objectMapper.readTree(response.body()).path("measurements");
+            return measurements.isEmpty() ? null : measurements.get(0).path("value").asDouble();
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void report(List<Scenario> scenarios, int users, Duration duration, OpenAiStubServer stub)
+            throws IOException {
+
+        Path reportFile = Path.of(settings.value("report", "target/loadtest-report.json"));
+        Path histogramDirectory = reportFile.toAbsolutePath().getParent().resolve("loadtest");
+        Files.createDirectories(histogramDirectory);
+
+        double seconds = duration.toMillis() / 1000.0;
+        Map<String, Object> scenarioResults = new LinkedHashMap<>();
+        PrintStream out = System.out;
+        out.printf("%n%-10s %10s %10s %10s %10s %10s %10s %10s%n",
+                "scenario", "ok", "failed", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+
+        for (Scenario scenario : scenarios) {
+            Histogram histogram = histograms.get(scenario);
+            long failed = failures.get(scenario).values().stream().mapToLong(AtomicLong::get).sum();
+            out.printf("%-10s %10d %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    scenario.name().toLowerCase(), histogram.getTotalCount(), failed,
+                    histogram.getTotalCount() / seconds,
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getMaxValue()));
+
+            Path hgrm = histogramDirectory.resolve(scenario.name().toLowerCase() + ".hgrm");
+            try (PrintStream file = new PrintStream(Files.newOutputStream(hgrm))) {
+                histogram.outputPercentileDistribution(file, 1000.0);
+            }
+
+            Map<String, Object> percentiles = new LinkedHashMap<>();
+            for (double percentile : PERCENTILES) {
+                percentiles.put("p" + (percentile % 1 == 0 ? String.valueOf((int) percentile) : String.valueOf(percentile)),
+                        millis(histogram.getValueAtPercentile(percentile)));
+            }
+            Map<String, Long> failuresByStatus = new LinkedHashMap<>();
+            failures.get(scenario).forEach((status, count) -> failuresByStatus.put(String.valueOf(status), count.get()));
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("requests", histogram.getTotalCount());
+            result.put("failures", failuresByStatus);
+            result.put("throughput", histogram.getTotalCount() / seconds);
+            result.put("meanMillis", histogram.getMean() / 1000.0);
+            result.put("maxMillis", millis(histogram.getMaxValue()));
+            result.put("percentilesMillis", percentiles);
+            result.put("histogram", hgrm.toString());
+            scenarioResults.put(scenario.name().toLowerCase(), result);
+        }
+
+        out.printf("%n%-16s %10s %10s%n", "pool", "mean", "max");
+        Map<String, Object> pools = new LinkedHashMap<>();
+        poolStats.forEach((label, stats) -> {
+            out.printf("%-16s %10.1f %10.1f%n", label, stats.mean(), stats.max());
+            pools.put(label, Map.of("mean", stats.mean(), "max", stats.max()));
+        });
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("users", users);
+        report.put("durationSeconds", seconds);
+        report.put("scenarios", scenarioResults);
+        report.put("pools", pools);
+        if (stub != null) {
+            report.put("stubRequests", stub.requestCounts());
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), report);
+        out.printf("%nReport written to %s, histograms in %s%n", reportFile.toAbsolutePath(), histogramDirectory);
+    }
+
+    private static double millis(long micros) {
+
+        return micros / 1000.0;
+    }
+
+    private record PoolGauge(String label, String metric, String tag) {
+    }
+
+    private static final class GaugeStats {
+
+        private double sum;
+        private double max;
+        private long count;
+
+        synchronized void add(double value) {
+
+            sum += value;
+            max = Math.max(max, value);
+            count++;
+        }
+
+        synchronized double mean() {
+
+            return count == 0 ? 0 : sum / count;
+        }
+
+        synchronized double max() {
+
+            return max;
+        }
+    }
+}
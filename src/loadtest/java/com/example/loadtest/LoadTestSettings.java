@@ -0,0 +1,75 @@
+package com.example.loadtest;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code key=value} command line arguments of the load test, e.g.
+ * {@code users=50 duration=2m scenarios=chat,rag stub.chat=800ms/4s stub.errors=0.01}.
+ */
+public record LoadTestSettings(Map<String, String> values) {
+
+    private static final Map<OpenAiStubServer.Endpoint, String> DEFAULT_LATENCIES = Map.of(
+            OpenAiStubServer.Endpoint.CHAT, "800ms/4s",
+            OpenAiStubServer.Endpoint.EMBEDDING, "60ms/300ms",
+            OpenAiStubServer.Endpoint.TRANSCRIPTION, "3s/12s",
+            OpenAiStubServer.Endpoint.SPEECH, "1500ms/6s",
+            OpenAiStubServer.Endpoint.IMAGE, "8s/20s");
+
+    public static LoadTestSettings parse(String[] args) {
+
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            values.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+        }
+        return new LoadTestSettings(values);
+    }
+
+    public String value(String key, String defaultValue) {
+
+        return values.getOrDefault(key, defaultValue);
+    }
+
+    public int intValue(String key, int defaultValue) {
+
+        return values.containsKey(key) ? Integer.parseInt(values.get(key)) : defaultValue;
+    }
+
+    public double doubleValue(String key, double defaultValue) {
+
+        return values.containsKey(key) ? Double.parseDouble(values.get(key)) : defaultValue;
+    }
+
+    public Duration duration(String key, String defaultValue) {
+
+        return LatencyModel.parseDuration(value(key, defaultValue));
+    }
+
+    public List<String> list(String key, String defaultValue) {
+
+        return List.of(value(key, defaultValue).split(","));
+    }
+
+    /**
+     * Stub latencies per endpoint, read from {@code chat}, {@code embedding}, ... optionally prefixed by
+     * {@code stub.} when passed to the driver.
+     */
+    public Map<OpenAiStubServer.Endpoint, LatencyModel> stubLatencies() {
+
+        Map<OpenAiStubServer.Endpoint, LatencyModel> latencies = new EnumMap<>(OpenAiStubServer.Endpoint.class);
+        for (OpenAiStubServer.Endpoint endpoint : OpenAiStubServer.Endpoint.values()) {
+            String name = endpoint.name().toLowerCase();
+            String value = values.getOrDefault("stub." + name,
+                    values.getOrDefault(name, DEFAULT_LATENCIES.get(endpoint)));
+            latencies.put(endpoint, LatencyModel.parse(value));
+        }
+        return latencies;
+    }
+}
@@ -0,0 +1,443 @@
+package com.example.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OpenAI-compatible HTTP server for load tests. It answers the chat, embedding, audio and image endpoints
+ * the application uses with plausible payloads after a simulated model latency, can stream chat completions
+ * and injects rate-limit and server errors at a configurable rate. Point the application at it with
+ * {@code spring.ai.openai.base-url=http://localhost:<port>}.
+ */
+public class OpenAiStubServer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenAiStubServer.class);
+    private static final int DEFAULT_DIMENSIONS = 1536;
+    private static final int CACHE_BLOCK_TOKENS = 128;
+    private static final int MIN_CACHEABLE_TOKENS = 1024;
+    private static final int MAX_CACHED_PREFIXES = 10_000;
+
+    public enum Endpoint {
+        CHAT, EMBEDDING, TRANSCRIPTION, SPEECH, IMAGE
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Endpoint, LatencyModel> latencies;
+    private final double errorRate;
+    private final HttpServer server;
+    // Least recently used prefixes are forgotten, as a provider evicts cold cache entries
+    private final Map<Integer, Boolean> seenPrefixes = Collections.synchronizedMap(
+            new LinkedHashMap<>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+
+                    return size() > MAX_CACHED_PREFIXES;
+                }
+            });
+    private final Map<Endpoint, AtomicLong> requestCounts = new EnumMap<>(Endpoint.class);
+    private final AtomicLong errorCount = new AtomicLong();
+
+    public OpenAiStubServer(int port, Map<Endpoint, LatencyModel> latencies, double errorRate) throws IOException {
+
+        this.latencies = new EnumMap<>(Endpoint.class);
+        this.latencies.putAll(latencies);
+        this.errorRate = errorRate;
+        for (Endpoint endpoint : Endpoint.values()) {
+            this.latencies.putIfAbsent(endpoint, new LatencyModel(Duration.ZERO, Duration.ZERO));
+            requestCounts.put(endpoint, new AtomicLong());
+        }
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, Endpoint.CHAT));
+        server.createContext("/v1/embeddings", exchange -> handle(exchange, Endpoint.EMBEDDING));
+        server.createContext("/v1/audio/transcriptions", exchange -> handle(exchange, Endpoint.TRANSCRIPTION));
+        server.createContext("/v1/audio/speech", exchange -> handle(exchange, Endpoint.SPEECH));
+        server.createContext("/v1/images/generations", exchange -> handle(exchange, Endpoint.IMAGE));
+    }
+
+    /**
+     * Runs the stub on its own, e.g. to load test an application started separately:
+     * {@code port=9090 chat=800ms/4s errors=0.01}.
+     */
+    public static void main(String[] args) throws Exception {
+
+        LoadTestSettings settings = LoadTestSettings.parse(args);
+        OpenAiStubServer stub = new OpenAiStubServer(settings.intValue("port", 9090),
+                settings.stubLatencies(), settings.doubleValue("errors", settings.doubleValue("stub.errors", 0)));
+        stub.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(stub::close));
+        Thread.currentThread().join();
+    }
+
+    public void start() {
+
+        server.start();
+        logger.info("OpenAI stub listening on {} with latencies {} and error rate {}", baseUrl(), latencies, errorRate);
+    }
+
+    public String baseUrl() {
+
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public Map<String, Long> requestCounts() {
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        requestCounts.forEach((endpoint, count) -> counts.put(endpoint.name().toLowerCase(), count.get()));
+        counts.put("errors", errorCount.get());
+        return counts;
+    }
+
+    @Override
+    public void close() {
+
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange, Endpoint endpoint) throws IOException {
+
+        try (exchange) {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            requestCounts.get(endpoint).incrementAndGet();
+
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "invalid_request_error", "Method not allowed");
+                return;
+            }
+            if (injectError(exchange)) {
+                return;
+            }
+
+            switch (endpoint) {
+                case CHAT -> chat(exchange, objectMapper.readTree(body));
+                case EMBEDDING -> embeddings(exchange, objectMapper.readTree(body));
+                case TRANSCRIPTION -> transcription(exchange);
+                case SPEECH -> speech(exchange);
+                case IMAGE -> image(exchange, objectMapper.readTree(body));
+            }
+        } catch (IOException e) {
+            // The client gave up (read timeout or cancelled request), nothing left to answer
+            logger.debug("{} request aborted: {}", endpoint, e.getMessage());
+        }
+    }
+
+    private boolean injectError(HttpExchange exchange) throws IOException {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (errorRate <= 0 || random.nextDouble() >= errorRate) {
+            return false;
+        }
+        errorCount.incrementAndGet();
+        if (random.nextBoolean()) {
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            sendError(exchange, 429, "rate_limit_exceeded", "Rate limit reached for requests");
+        } else {
+            sendError(exchange, 500, "server_error", "The server had an error while processing your request");
+        }
+        return true;
+    }
+
+    private void chat(HttpExchange exchange, JsonNode request) throws IOException {
+
+        String model = request.path("model").asText("gpt-4o");
+        List<String> contents = new ArrayList<>();
+        for (JsonNode message : request.path("messages")) {
+            contents.add(messageText(message.path("content")));
+        }
+        String prompt = String.join("\n", contents);
+        String answer = answer(prompt);
+
+        int promptTokens = estimateTokens(prompt);
+        int completionTokens = estimateTokens(answer);
+        int cachedTokens = cachedTokens(contents.isEmpty() ? "" : contents.getFirst(), promptTokens);
+        Map<String, Object> usage = Map.of(
+                "prompt_tokens", promptTokens,
+                "completion_tokens", completionTokens,
+                "total_tokens", promptTokens + completionTokens,
+                "prompt_tokens_details", Map.of("cached_tokens", cachedTokens));
+
+        String id = "chatcmpl-" + UUID.randomUUID();
+        long created = Instant.now().getEpochSecond();
+        Duration latency = latencies.get(Endpoint.CHAT).sample();
+
+        if (request.path("stream").asBoolean(false)) {
+            streamChat(exchange, id, created, model, answer, usage, latency);
+            return;
+        }
+
+        sleep(latency);
+        Map<String, Object> response = Map.of(
+                "id", id,
+                "object", "chat.completion",
+                "created", created,
+                "model", model,
+                "choices", List.of(Map.of(
+                        "index", 0,
+                        "message", Map.of("role", "assistant", "content", answer),
+                        "finish_reason", "stop")),
+                "usage", usage);
+        sendJson(exchange, 200, response);
+    }
+
+    private void streamChat(HttpExchange exchange, String id, long created, String model, String answer,
+                            Map<String, Object> usage, Duration latency) throws IOException {
+
+        String[] words = answer.split("(?<= )");
+        // Time to first token is most of the latency, the rest is spread over the chunks
+        sleep(latency.multipliedBy(7).dividedBy(10));
+        Duration perChunk = latency.multipliedBy(3).dividedBy(10).dividedBy(Math.max(1, words.length));
+
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        for (int i = 0; i < words.length; i++) {
+            Map<String, Object> delta = i == 0
+                    ? Map.of("role", "assistant", "content", words[i])
+                    : Map.of("content", words[i]);
+            writeEvent(out, chunk(id, created, model, delta, null, null));
+            sleep(perChunk);
+        }
+        writeEvent(out, chunk(id, created, model, Map.of(), "stop", usage));
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private Map<String, Object> chunk(String id, long created, String model, Map<String, Object> delta,
+                                      String finishReason, Map<String, Object> usage) {
+
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+
+        Map<String, Object> chunk = new LinkedHashMap<>();
+        chunk.put("id", id);
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("created", created);
+        chunk.put("model", model);
+        chunk.put("choices", List.of(choice));
+        if (usage != null) {
+            chunk.put("usage", usage);
+        }
+        return chunk;
+    }
+
+    private void writeEvent(OutputStream out, Map<String, Object> data) throws IOException {
+
+        out.write(("data: " + objectMapper.writeValueAsString(data) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Picks a response the application can parse: structured output prompts get JSON in the requested
+     * shape, everything else gets prose.
+     */
+    private String answer(String prompt) {
+
+        String compact = prompt.replaceAll("\\s", "");
+        if (compact.contains("\"type\":\"array\"")) {
+            return """
+                    [{"achievement": "FIFA World Cup winner"}, {"achievement": "Ballon d'Or"}, \
+                    {"achievement": "UEFA Champions League winner"}]""";
+        }
+        if (prompt.contains("playerName")) {
+            return """
+                    {"playerName": "Lionel Messi", "achievements": ["FIFA World Cup winner", "8 Ballon d'Or awards", \
+                    "4 UEFA Champions League titles"]}""";
+        }
+        return "This is a simulated answer from the load-test stub. It is long enough to resemble a short model "
+                + "response with a few sentences of text, so that response sizes and parsing costs are realistic. "
+                + "The content itself carries no meaning.";
+    }
+
+    /**
+     * Mimics automatic prompt caching: once a leading message has been seen, later prompts that start with it
+     * report its tokens as cached, in 128 token blocks and only for prompts of at least 1024 tokens.
+     */
+    private int cachedTokens(String prefix, int promptTokens) {
+
+        boolean seen = seenPrefixes.put(prefix.hashCode(), Boolean.TRUE) != null;
+        if (!seen || promptTokens < MIN_CACHEABLE_TOKENS) {
+            return 0;
+        }
+        return Math.min(promptTokens, estimateTokens(prefix)) / CACHE_BLOCK_TOKENS * CACHE_BLOCK_TOKENS;
+    }
+
+    private void embeddings(HttpExchange exchange, JsonNode request) throws IOException {
+
+        int dimensions = request.path("dimensions").asInt(DEFAULT_DIMENSIONS);
+        JsonNode input = request.path("input");
+        List<String> texts = new ArrayList<>();
+        if (input.isArray()) {
+            input.forEach(text -> texts.add(text.asText()));
+        } else {
+            texts.add(input.asText());
+        }
+
+        List<Map<String, Object>> data = new ArrayList<>(texts.size());
+        int tokens = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            data.add(Map.of("object", "embedding", "index", i, "embedding", embed(texts.get(i), dimensions)));
+            tokens += estimateTokens(texts.get(i));
+        }
+
+        sleep(latencies.get(Endpoint.EMBEDDING).sample());
+        sendJson(exchange, 200, Map.of(
+                "object", "list",
+                "data", data,
+                "model", request.path("model").asText("text-embedding-ada-002"),
+                "usage", Map.of("prompt_tokens", tokens, "total_tokens", tokens)));
+    }
+
+    private void transcription(HttpExchange exchange) throws IOException {
+
+        String srt = """
+                1
+                00:00:00,000 --> 00:00:04,000
+                This is a simulated transcription from the load-test stub.
+
+                2
+                00:00:04,000 --> 00:00:08,000
+                The audio content itself was not processed.
+                """;
+        sleep(latencies.get(Endpoint.TRANSCRIPTION).sample());
+        send(exchange, 200, "text/plain; charset=utf-8", srt.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void speech(HttpExchange exchange) throws IOException {
+
+        byte[] audio = new byte[32 * 1024];
+        ThreadLocalRandom.current().nextBytes(audio);
+        sleep(latencies.get(Endpoint.SPEECH).sample());
+        send(exchange, 200, "audio/mpeg", audio);
+    }
+
+    private void image(HttpExchange exchange, JsonNode request) throws IOException {
+
+        String prompt = request.path("prompt").asText();
+        String b64 = Base64.getEncoder().encodeToString(png(prompt));
+        sleep(latencies.get(Endpoint.IMAGE).sample());
+        sendJson(exchange, 200, Map.of(
+                "created", Instant.now().getEpochSecond(),
+                "data", List.of(Map.of("b64_json", b64, "revised_prompt", prompt))));
+    }
+
+    private static String messageText(JsonNode content) {
+
+        if (!content.isArray()) {
+            return content.asText();
+        }
+        StringBuilder text = new StringBuilder();
+        for (JsonNode part : content) {
+            if ("text".equals(part.path("type").asText())) {
+                text.append(part.path("text").asText()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private static int estimateTokens(String text) {
+
+        return Math.max(1, text.length() / 4);
+    }
+
+    private static float[] embed(String text, int dimensions) {
+
+        float[] vector = new float[dimensions];
+        for (String word : text.toLowerCase().split("\\W+")) {
+            if (!word.isEmpty()) {
+                int hash = word.hashCode();
+                vector[Math.floorMod(hash, dimensions)] += (hash & 1) == 0 ? 1f : -1f;
+            }
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            vector[0] = 1f;
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    static byte[] png(String seed) {
+
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(seed.hashCode() & 0xFFFFFF));
+        graphics.fillRect(0, 0, 256, 256);
+        graphics.setColor(Color.WHITE);
+        graphics.fillOval(64 + Math.floorMod(seed.hashCode(), 64), 64, 96, 96);
+        graphics.dispose();
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String type, String message) throws IOException {
+
+        sendJson(exchange, status, Map.of("error", Map.of("message", message, "type", type, "code", type)));
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+
+        send(exchange, status, "application/json", objectMapper.writeValueAsBytes(body));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(Duration duration) {
+
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.loadtest;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Requests the driver sends, one per controller endpoint under test. Inputs are drawn from small pools so
+ * a run contains both repeated and distinct requests, like real traffic.
+ */
+public enum Scenario {
+
+    CHAT {
+        @Override
+        HttpRequest.Builder request(URI base, ThreadLocalRandom random) {
+
+            return get(base, "/api/v1/chat?message=" + encode(pick(QUESTIONS, random)));
+        }
+    },
+    PLAYER {
+        @Override
+        HttpRequest.Builder request(URI base, ThreadLocalRandom random) {
+
+            return get(base, "/api/v1/chat/player?name=" + encode(pick(PLAYERS, random)));
+        }
+    },
+    RAG {
+        @Override
+        HttpRequest.Builder request(URI base, ThreadLocalRandom random) {
+
+            return get(base, "/api/v1/rag/pgvector-question?q=" + encode(pick(QUESTIONS, random)));
+        }
+    },
+    AUDIO {
+        @Override
+        HttpRequest.Builder request(URI base, ThreadLocalRandom random) {
+
+            return multipart(base, "/api/v1/audio/upload-audio-to-transcribe", "speech.mp3", "audio/mpeg", AUDIO_FILE);
+        }
+    },
+    IMAGE {
+        @Override
+        HttpRequest.Builder request(URI base, ThreadLocalRandom random) {
+
+            String prompt = pick(IMAGE_PROMPTS, random) + " " + random.nextInt(IMAGE_PROMPT_VARIANTS);
+            return get(base, "/api/v1/image/" + encode(prompt).replace("+", "%20"));
+        }
+    },
+    DESCRIBE {
+        @Override
+        HttpRequest.Builder request(URI base, ThreadLocalRandom random) {
+
+            return multipart(base, "/api/v1/image/describe-image", "upload.png", "image/png", pick(IMAGES, random));
+        }
+    };
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(5);
+    private static final int IMAGE_PROMPT_VARIANTS = 20;
+
+    // Questions about the constitution that PGVectorLoader ingests, plus a few it cannot answer
+    private static final List<String> QUESTIONS = List.of(
+            "What is the capital of Bulgaria?",
+            "What is the official language of the Republic of Bulgaria?",
+            "How many members does the National Assembly have?",
+            "For how long is the National Assembly elected?",
+            "Who can be elected President of the Republic?",
+            "How long is the term of office of the President?",
+            "Who appoints the Prime Minister?",
+            "How can the Constitution be amended?",
+            "When is a Grand National Assembly convened?",
+            "What are the powers of the Constitutional Court?",
+            "Who elects the Prosecutor General?",
+            "Is the right to education guaranteed?",
+            "Can private property be expropriated?",
+            "What does the Constitution say about freedom of religion?",
+            "Which body manages the judicial system?",
+            "What is the national currency of Bulgaria?",
+            "Who won the 2022 FIFA World Cup?");
+
+    private static final List<String> PLAYERS = List.of(
+            "Lionel Messi", "Cristiano Ronaldo", "Serena Williams", "Michael Jordan", "Usain Bolt", "Roger Federer");
+
+    private static final List<String> IMAGE_PROMPTS = List.of(
+            "a lighthouse at dusk", "a red fox in the snow", "a city skyline in watercolor", "a bowl of ramen");
+
+    private static final byte[] AUDIO_FILE = fakeMp3();
+
+    // Distinct enough that each image misses the perceptual hash cache the first time it is described
+    private static final List<byte[]> IMAGES = IntStream.range(0, 64)
+            .mapToObj(Scenario::photo)
+            .toList();
+
+    abstract HttpRequest.Builder request(URI base, ThreadLocalRandom random);
+
+    public static Scenario of(String name) {
+
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    private static HttpRequest.Builder get(URI base, String path) {
+
+        return HttpRequest.newBuilder(base.resolve(path))
+                .timeout(REQUEST_TIMEOUT)
+                .GET();
+    }
+
+    private static HttpRequest.Builder multipart(URI base, String path, String filename, String contentType,
+                                                 byte[] content) {
+
+        String boundary = "loadtest-" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 256);
+        body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        return HttpRequest.newBuilder(base.resolve(path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+    }
+
+    private static <T> T pick(List<T> values, ThreadLocalRandom random) {
+
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static String encode(String value) {
+
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A camera-sized PNG with a gradient background and randomly placed shapes, laid out differently for
+     * every seed.
+     */
+    private static byte[] photo(int seed) {
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int[][] sizes = {{640, 480}, {1024, 768}, {1600, 1200}, {1200, 1600}};
+        int[] size = sizes[random.nextInt(sizes.length)];
+        int width = size[0];
+        int height = size[1];
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setPaint(new GradientPaint(
+                    random.nextInt(width), random.nextInt(height), new Color(random.nextInt(0x1000000)),
+                    random.nextInt(width), random.nextInt(height), new Color(random.nextInt(0x1000000))));
+            graphics.fillRect(0, 0, width, height);
+            for (int i = 0, shapes = 8 + random.nextInt(8); i < shapes; i++) {
+                graphics.setColor(new Color(random.nextInt(0x1000000)));
+                int x = random.nextInt(width);
+                int y = random.nextInt(height);
+                int w = width / 10 + random.nextInt(width / 3);
+                int h = height / 10 + random.nextInt(height / 3);
+                if (random.nextBoolean()) {
+                    graphics.fillOval(x - w / 2, y - h / 2, w, h);
+                } else {
+                    graphics.fillRect(x - w / 2, y - h / 2, w, h);
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] fakeMp3() {
+        // ID3 header followed by noise, enough for the upload path; the stub never decodes it
+        byte[] audio = new byte[256 * 1024];
+        ThreadLocalRandom.current().nextBytes(audio);
+        System.arraycopy("ID3".getBytes(StandardCharsets.US_ASCII), 0, audio, 0, 3);
+        return audio;
+    }
+}
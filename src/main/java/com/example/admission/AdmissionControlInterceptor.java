@@ -0,0 +1,174 @@
+package com.example.admission;
+
+import com.example.config.OpenAiEndpoint;
+import com.example.service.ImagePreprocessor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Admits every request the OpenAI models send through the shared {@code RestClient} against the
+ * {@link AdmissionLimiter} of its endpoint. Requests to any other host pass through.
+ * <p>
+ * The interceptor sees each HTTP attempt, so Spring AI retries queue behind new work instead of adding to a
+ * burst that is already being throttled.
+ */
+@Component
+public class AdmissionControlInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlInterceptor.class);
+    private static final String BASE64_MARKER = ";base64,";
+    private static final int IMAGE_TOKENS = ImagePreprocessor.estimateVisionTokens(1024, 1024);
+
+    private static final Map<OpenAiEndpoint, Defaults> DEFAULTS = Map.of(
+            OpenAiEndpoint.CHAT, new Defaults(500, 30_000, 50),
+            OpenAiEndpoint.EMBEDDING, new Defaults(3_000, 1_000_000, 50),
+            OpenAiEndpoint.TRANSCRIPTION, new Defaults(50, 0, 10),
+            OpenAiEndpoint.SPEECH, new Defaults(50, 0, 10),
+            OpenAiEndpoint.IMAGE, new Defaults(50, 0, 10));
+
+    private final URI baseUrl;
+    private final boolean enabled;
+    private final Duration queueTimeout;
+    private final Map<OpenAiEndpoint, AdmissionLimiter> limiters = new EnumMap<>(OpenAiEndpoint.class);
+    private final Map<OpenAiEndpoint, Counter> rejections = new EnumMap<>(OpenAiEndpoint.class);
+
+    public AdmissionControlInterceptor(Environment environment,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${spring.ai.openai.base-url:https://api.openai.com}") URI baseUrl,
+                                       @Value("${ai.admission.enabled:true}") boolean enabled,
+                                       @Value("${ai.admission.queue-timeout:10s}") Duration queueTimeout,
+                                       @Value("${ai.admission.max-queued:100}") int maxQueued,
+                                       @Value("${ai.admission.burst:10s}") Duration burst,
+                                       @Value("${ai.admission.latency-tolerance:3.0}") double latencyTolerance) {
+
+        this.baseUrl = baseUrl;
+        this.enabled = enabled;
+        this.queueTimeout = queueTimeout;
+
+        DEFAULTS.forEach((endpoint, defaults) -> {
+            String name = endpoint.name().toLowerCase();
+            String prefix = "ai.admission." + name + ".";
+            int maxConcurrency = environment.getProperty(prefix + "max-concurrency", Integer.class,
+                    defaults.maxConcurrency());
+            AdmissionLimiter limiter = new AdmissionLimiter(name,
+                    environment.getProperty(prefix + "requests-per-minute", Integer.class,
+                            defaults.requestsPerMinute()),
+                    environment.getProperty(prefix + "tokens-per-minute", Integer.class,
+                            defaults.tokensPerMinute()),
+                    burst,
+                    environment.getProperty(prefix + "initial-concurrency", Integer.class,
+                            Math.max(1, maxConcurrency / 2)),
+                    maxConcurrency,
+                    maxQueued,
+                    latencyTolerance);
+            limiters.put(endpoint, limiter);
+
+            Gauge.builder("ai.admission.limit", limiter, AdmissionLimiter::limit)
+                    .description("Adaptive concurrency limit of a model endpoint")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            Gauge.builder("ai.admission.in-flight", limiter, AdmissionLimiter::inFlight)
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            Gauge.builder("ai.admission.queued", limiter, AdmissionLimiter::queued)
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            rejections.put(endpoint, Counter.builder("ai.admission.rejected")
+                    .description("Model requests shed by admission control")
+                    .tag("endpoint", name)
+                    .register(meterRegistry));
+        });
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+
+        OpenAiEndpoint endpoint = OpenAiEndpoint.of(request.getURI(), baseUrl);
+        AdmissionLimiter limiter = limiters.get(endpoint);
+        if (!enabled || limiter == null) {
+            return execution.execute(request, body);
+        }
+
+        AdmissionLimiter.Permit permit;
+        try {
+            permit = limiter.acquire(estimateTokens(endpoint, body), queueTimeout);
+        } catch (AdmissionRejectedException e) {
+            rejections.get(endpoint).increment();
+            logger.debug("Rejected {} request: {}", endpoint, e.getMessage());
+            throw e;
+        }
+
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            permit.release(response.getStatusCode().value(), retryAfter(response));
+            return response;
+        } catch (IOException | RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // Abandoned by the caller, e.g. the losing call of a hedge, not a sign of overload
+                permit.cancel();
+            } else {
+                permit.release(-1, null);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Rough token count of a request for the tokens-per-minute bucket: a quarter of the JSON length, with
+     * inline base64 images counted at the vision cost of a 1024 pixel image instead of their size.
+     */
+    static int estimateTokens(OpenAiEndpoint endpoint, byte[] body) {
+
+        if (endpoint != OpenAiEndpoint.CHAT && endpoint != OpenAiEndpoint.EMBEDDING) {
+            return 0;
+        }
+        String json = new String(body, StandardCharsets.UTF_8);
+        long characters = json.length();
+        int images = 0;
+        int start = json.indexOf(BASE64_MARKER);
+        while (start >= 0) {
+            int end = json.indexOf('"', start);
+            if (end < 0) {
+                break;
+            }
+            characters -= end - start;
+            images++;
+            start = json.indexOf(BASE64_MARKER, end);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, characters / 4 + (long) images * IMAGE_TOKENS);
+    }
+
+    private static Duration retryAfter(ClientHttpResponse response) {
+
+        String value = response.getHeaders().getFirst("Retry-After");
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Duration.ofMillis(Math.round(Double.parseDouble(value) * 1000));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private record Defaults(int requestsPerMinute, int tokensPerMinute, int maxConcurrency) {
+    }
+}
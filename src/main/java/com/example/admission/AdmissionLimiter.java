@@ -0,0 +1,291 @@
+package com.example.admission;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for one model endpoint: a requests-per-minute and a tokens-per-minute bucket sized
+ * after the provider quota, and a concurrency limit that adapts to the responses (AIMD). The limit grows by
+ * one per round trip while responses are fast and successful, shrinks by a tenth when latency climbs well
+ * above its long-term average and halves on a 429, which also pauses admission for the Retry-After time.
+ * <p>
+ * Callers that cannot be admitted wait in line until their deadline. Requests are shed immediately when the
+ * line is full or when the buckets cannot refill before the deadline, rather than after waiting for nothing.
+ */
+public class AdmissionLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double THROTTLED_RATIO = 0.5;
+    private static final double LATENCY_SMOOTHING = 0.05;
+    private static final Duration DEFAULT_PAUSE = Duration.ofSeconds(1);
+
+    private final String name;
+    private final Bucket requests;
+    private final Bucket tokens;
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final double latencyTolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private double averageLatencyNanos;
+    private long lastDecreaseNanos;
+    private long pausedUntilNanos;
+
+    public AdmissionLimiter(String name, int requestsPerMinute, int tokensPerMinute, Duration burst,
+                            int initialConcurrency, int maxConcurrency, int maxQueued, double latencyTolerance) {
+
+        this.name = name;
+        this.requests = new Bucket(requestsPerMinute, burst);
+        this.tokens = new Bucket(tokensPerMinute, burst);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxQueued = maxQueued;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = Math.clamp(initialConcurrency, 1, this.maxConcurrency);
+    }
+
+    /**
+     * Waits until the request fits the buckets and the concurrency limit, or throws
+     * {@link AdmissionRejectedException} when that cannot happen before {@code timeout} elapses.
+     */
+    public Permit acquire(int tokenCount, Duration timeout) {
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        int cost = tokens.fit(tokenCount);
+
+        lock.lock();
+        try {
+            long arrival = System.nanoTime();
+            requests.refill(arrival);
+            tokens.refill(arrival);
+            // The line only limits callers that would have to wait in it
+            if (queued == 0 && canRun(arrival, cost)) {
+                return admit(arrival, cost);
+            }
+            if (queued >= maxQueued) {
+                throw new AdmissionRejectedException(name, "queue full", DEFAULT_PAUSE);
+            }
+
+            // Everyone already waiting is served first, so shed now if the buckets cannot cover them and us in time
+            long expectedWait = Math.max(pausedUntilNanos - arrival,
+                    Math.max(requests.nanosUntil(queued + 1), tokens.nanosUntil((double) cost * (queued + 1))));
+            if (arrival + expectedWait > deadline) {
+                throw new AdmissionRejectedException(name, "rate limit",
+                        Duration.ofNanos(Math.max(expectedWait, DEFAULT_PAUSE.toNanos())));
+            }
+            queued++;
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    requests.refill(now);
+                    tokens.refill(now);
+                    if (canRun(now, cost)) {
+                        return admit(now, cost);
+                    }
+
+                    long wait = Math.max(pausedUntilNanos - now,
+                            Math.max(requests.nanosUntil(1), tokens.nanosUntil(cost)));
+                    if (wait > 0 && now + wait > deadline) {
+                        // The buckets cannot refill in time, waiting would only delay the same answer
+                        throw new AdmissionRejectedException(name, "rate limit",
+                                Duration.ofNanos(Math.max(wait, DEFAULT_PAUSE.toNanos())));
+                    }
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        throw new AdmissionRejectedException(name, "concurrency limit", DEFAULT_PAUSE);
+                    }
+                    available.awaitNanos(wait > 0 ? Math.min(wait, remaining) : remaining);
+                }
+            } finally {
+                queued--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AdmissionRejectedException(name, "interrupted", DEFAULT_PAUSE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double limit() {
+
+        return limit;
+    }
+
+    public int inFlight() {
+
+        return inFlight;
+    }
+
+    public int queued() {
+
+        return queued;
+    }
+
+    public String name() {
+
+        return name;
+    }
+
+    private boolean canRun(long now, int cost) {
+
+        return now >= pausedUntilNanos
+                && inFlight < Math.floor(limit)
+                && requests.has(1)
+                && tokens.has(cost);
+    }
+
+    private Permit admit(long now, int cost) {
+
+        requests.take(1);
+        tokens.take(cost);
+        inFlight++;
+        return new Permit(now);
+    }
+
+    private void onComplete(long startNanos, int status, Duration retryAfter) {
+
+        long now = System.nanoTime();
+        long latency = now - startNanos;
+
+        lock.lock();
+        try {
+            inFlight--;
+            if (status == 429) {
+                limit = Math.max(1, limit * THROTTLED_RATIO);
+                lastDecreaseNanos = now;
+                pausedUntilNanos = now + (retryAfter != null ? retryAfter : DEFAULT_PAUSE).toNanos();
+            } else if (status < 0 || isSlow(latency)) {
+                // Decrease at most once per round trip, one slow batch should not collapse the limit
+                if (now - lastDecreaseNanos > averageLatencyNanos) {
+                    limit = Math.max(1, limit * BACKOFF_RATIO);
+                    lastDecreaseNanos = now;
+                }
+            } else if (status < 500) {
+                limit = Math.min(maxConcurrency, limit + 1 / limit);
+            }
+
+            if (status >= 200 && status < 300) {
+                averageLatencyNanos = averageLatencyNanos == 0
+                        ? latency
+                        : averageLatencyNanos + LATENCY_SMOOTHING * (latency - averageLatencyNanos);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onCancel() {
+
+        lock.lock();
+        try {
+            inFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isSlow(long latency) {
+
+        return averageLatencyNanos > 0 && latency > averageLatencyNanos * latencyTolerance;
+    }
+
+    /**
+     * An admitted request. Release it exactly once with the response status, or {@code -1} when no response
+     * was received, or cancel it when the caller gave up on the request so the limit is left as it is.
+     */
+    public final class Permit {
+
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(long startNanos) {
+
+            this.startNanos = startNanos;
+        }
+
+        public void release(int status, Duration retryAfter) {
+
+            if (released) {
+                return;
+            }
+            released = true;
+            onComplete(startNanos, status, retryAfter);
+        }
+
+        public void cancel() {
+
+            if (released) {
+                return;
+            }
+            released = true;
+            onCancel();
+        }
+    }
+
+    /**
+     * Token bucket refilled continuously at a per-minute rate, holding at most {@code burst} worth of it.
+     * A rate of zero or less means unlimited.
+     */
+    private static final class Bucket {
+
+        private final double capacity;
+        private final double perNano;
+        private double available;
+        private long refilledAt = System.nanoTime();
+
+        private Bucket(int perMinute, Duration burst) {
+
+            this.perNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.capacity = perMinute <= 0 ? Double.MAX_VALUE : Math.max(1, perNano * burst.toNanos());
+            this.available = capacity;
+        }
+
+        boolean unlimited() {
+
+            return perNano <= 0;
+        }
+
+        /**
+         * Caps a cost at the bucket capacity, so a request larger than the burst can still run once the
+         * bucket is full.
+         */
+        int fit(int cost) {
+
+            return unlimited() ? 0 : (int) Math.min(cost, capacity);
+        }
+
+        void refill(long now) {
+
+            if (!unlimited()) {
+                available = Math.min(capacity, available + (now - refilledAt) * perNano);
+            }
+            refilledAt = now;
+        }
+
+        boolean has(double cost) {
+
+            return unlimited() || available >= cost;
+        }
+
+        void take(double cost) {
+
+            if (!unlimited()) {
+                available -= cost;
+            }
+        }
+
+        long nanosUntil(double cost) {
+
+            return has(cost) ? 0 : (long) Math.ceil((cost - available) / perNano);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.admission;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a model request cannot be admitted within its deadline, so the caller can answer 503 right
+ * away instead of adding to the provider's load.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final String endpoint;
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(String endpoint, String reason, Duration retryAfter) {
+
+        super("The " + endpoint + " model is at capacity (" + reason + "), try again later");
+        this.endpoint = endpoint;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getEndpoint() {
+
+        return endpoint;
+    }
+
+    public Duration getRetryAfter() {
+
+        return retryAfter;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Separate Hikari pools for writes (ingestion, jobs, schema) and reads (similarity searches) behind one
+ * routing {@link DataSource}. The write pool connects to {@code spring.datasource}, or to the compose
+ * service when Docker Compose support is active. The read pool connects to {@code datasource.read.url},
+ * typically a streaming replica, and falls back to the primary when it is not set.
+ * <p>
+ * Each pool has its own size and statement timeout. The read pool server-prepares statements on first
+ * use, so the similarity query is planned once per connection. Pool wait times are published as
+ * {@code hikaricp.connections.acquire} with the pool name as tag.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${datasource.write.pool-size:10}")
+    private int writePoolSize;
+
+    @Value("${datasource.write.statement-timeout:5m}")
+    private Duration writeStatementTimeout;
+
+    @Value("${datasource.read.url:}")
+    private String readUrl;
+
+    @Value("${datasource.read.pool-size:20}")
+    private int readPoolSize;
+
+    @Value("${datasource.read.statement-timeout:5s}")
+    private Duration readStatementTimeout;
+
+    @Value("${datasource.read.prepare-threshold:1}")
+    private int readPrepareThreshold;
+
+    @Value("${datasource.connection-timeout:5s}")
+    private Duration connectionTimeout;
+
+    @Bean
+    HikariDataSource writeDataSource(DataSourceProperties properties,
+                                     ObjectProvider<JdbcConnectionDetails> connectionDetails,
+                                     MeterRegistry meterRegistry) {
+
+        JdbcConnectionDetails primary = connectionDetails.getIfAvailable(() -> fromProperties(properties));
+        return pool("write", primary.getJdbcUrl(), primary, writePoolSize, writeStatementTimeout, 5, meterRegistry);
+    }
+
+    @Bean
+    HikariDataSource readDataSource(DataSourceProperties properties,
+                                    ObjectProvider<JdbcConnectionDetails> connectionDetails,
+                                    MeterRegistry meterRegistry) {
+
+        JdbcConnectionDetails primary = connectionDetails.getIfAvailable(() -> fromProperties(properties));
+        String url = readUrl.isBlank() ? primary.getJdbcUrl() : readUrl;
+        return pool("read", url, primary, readPoolSize, readStatementTimeout, readPrepareThreshold, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(HikariDataSource writeDataSource, HikariDataSource readDataSource) {
+
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource();
+        dataSource.setTargetDataSources(Map.of(
+                ReadWriteRoutingDataSource.Route.WRITE, writeDataSource,
+                ReadWriteRoutingDataSource.Route.READ, readDataSource));
+        dataSource.setDefaultTargetDataSource(writeDataSource);
+        return dataSource;
+    }
+
+    private HikariDataSource pool(String name, String url, JdbcConnectionDetails credentials, int poolSize,
+                                  Duration statementTimeout, int prepareThreshold, MeterRegistry meterRegistry) {
+
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(name);
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(credentials.getUsername());
+        dataSource.setPassword(credentials.getPassword());
+        dataSource.setDriverClassName(credentials.getDriverClassName());
+        dataSource.setMaximumPoolSize(poolSize);
+        dataSource.setConnectionTimeout(connectionTimeout.toMillis());
+        // Applied by the server to every statement on the connection, so a slow query cannot hold a connection
+        dataSource.addDataSourceProperty("options", "-c statement_timeout=" + statementTimeout.toMillis());
+        dataSource.addDataSourceProperty("prepareThreshold", prepareThreshold);
+        dataSource.addDataSourceProperty("preparedStatementCacheQueries", 256);
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return dataSource;
+    }
+
+    private static JdbcConnectionDetails fromProperties(DataSourceProperties properties) {
+
+        return new JdbcConnectionDetails() {
+
+            @Override
+            public String getUsername() {
+
+                return properties.determineUsername();
+            }
+
+            @Override
+            public String getPassword() {
+
+                return properties.determinePassword();
+            }
+
+            @Override
+            public String getJdbcUrl() {
+
+                return properties.determineUrl();
+            }
+
+            @Override
+            public String getDriverClassName() {
+
+                return properties.determineDriverClassName();
+            }
+        };
+    }
+}
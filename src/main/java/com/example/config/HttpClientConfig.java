@@ -0,0 +1,145 @@
+package com.example.config;
+
+import com.example.admission.AdmissionControlInterceptor;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestClientCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One pooled HTTP client behind every {@code RestClient} built from the auto-configured builder, which
+ * includes the OpenAI chat, embedding, audio and image models. Connections are kept alive and reused
+ * across requests, responses are gzip-decoded and the read timeout depends on the OpenAI endpoint called.
+ * Every model request also passes admission control before it is sent. Clients calling other hosts, such as
+ * job webhooks, are built from {@code RestClient.builder()} instead.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientConfig.class);
+
+    @Value("${spring.ai.openai.base-url:https://api.openai.com}")
+    private URI baseUrl;
+
+    @Value("${ai.http.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${ai.http.max-connections-per-route:50}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${ai.http.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    @Value("${ai.http.pool-acquire-timeout:10s}")
+    private Duration poolAcquireTimeout;
+
+    @Value("${ai.http.idle-timeout:60s}")
+    private Duration idleTimeout;
+
+    @Value("${ai.http.connection-ttl:5m}")
+    private Duration connectionTtl;
+
+    @Value("${ai.http.read-timeout.default:60s}")
+    private Duration defaultReadTimeout;
+
+    @Value("${ai.http.read-timeout.chat:60s}")
+    private Duration chatReadTimeout;
+
+    @Value("${ai.http.read-timeout.embedding:15s}")
+    private Duration embeddingReadTimeout;
+
+    @Value("${ai.http.read-timeout.transcription:120s}")
+    private Duration transcriptionReadTimeout;
+
+    @Value("${ai.http.read-timeout.speech:60s}")
+    private Duration speechReadTimeout;
+
+    @Value("${ai.http.read-timeout.image:120s}")
+    private Duration imageReadTimeout;
+
+    @Bean
+    PoolingHttpClientConnectionManager openAiConnectionManager() {
+
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setTimeToLive(TimeValue.of(connectionTtl))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                .build();
+
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(connectionConfig)
+                .build();
+    }
+
+    @Bean
+    CloseableHttpClient openAiHttpClient(PoolingHttpClientConnectionManager openAiConnectionManager) {
+        // Content compression is on by default: requests send Accept-Encoding and responses are decoded
+        return HttpClients.custom()
+                .setConnectionManager(openAiConnectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleTimeout))
+                .build();
+    }
+
+    @Bean
+    RestClientCustomizer openAiRestClientCustomizer(CloseableHttpClient openAiHttpClient,
+                                                    AdmissionControlInterceptor admissionControlInterceptor) {
+
+        Map<OpenAiEndpoint, RequestConfig> requestConfigs = new EnumMap<>(OpenAiEndpoint.class);
+        requestConfigs.put(OpenAiEndpoint.CHAT, requestConfig(chatReadTimeout));
+        requestConfigs.put(OpenAiEndpoint.EMBEDDING, requestConfig(embeddingReadTimeout));
+        requestConfigs.put(OpenAiEndpoint.TRANSCRIPTION, requestConfig(transcriptionReadTimeout));
+        requestConfigs.put(OpenAiEndpoint.SPEECH, requestConfig(speechReadTimeout));
+        requestConfigs.put(OpenAiEndpoint.IMAGE, requestConfig(imageReadTimeout));
+        requestConfigs.put(OpenAiEndpoint.OTHER, requestConfig(defaultReadTimeout));
+
+        HttpComponentsClientHttpRequestFactory requestFactory
+                = new HttpComponentsClientHttpRequestFactory(openAiHttpClient);
+        requestFactory.setHttpContextFactory((method, uri) -> {
+            HttpClientContext context = HttpClientContext.create();
+            context.setRequestConfig(requestConfigs.get(OpenAiEndpoint.of(uri, baseUrl)));
+            return context;
+        });
+
+        logger.info("Outbound HTTP pool: {} connections ({} per route), connect timeout {}",
+                maxConnections, maxConnectionsPerRoute, connectTimeout);
+        return builder -> builder
+                .requestFactory(requestFactory)
+                .requestInterceptor(admissionControlInterceptor);
+    }
+
+    @Bean
+    MeterBinder openAiConnectionPoolMetrics(PoolingHttpClientConnectionManager openAiConnectionManager) {
+
+        return new PoolingHttpClientConnectionManagerMetricsBinder(openAiConnectionManager, "openai");
+    }
+
+    private RequestConfig requestConfig(Duration readTimeout) {
+
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(poolAcquireTimeout))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.config;
+
+import java.net.URI;
+
+/**
+ * The OpenAI API families the application calls, recognised from the request path. Requests to any other
+ * host than the configured OpenAI base URL are {@link #OTHER}.
+ */
+public enum OpenAiEndpoint {
+    CHAT,
+    EMBEDDING,
+    TRANSCRIPTION,
+    SPEECH,
+    IMAGE,
+    OTHER;
+
+    public static OpenAiEndpoint of(URI uri, URI baseUrl) {
+
+        String path = uri.getPath();
+        if (path == null || uri.getHost() == null || !uri.getHost().equalsIgnoreCase(baseUrl.getHost())) {
+            return OTHER;
+        }
+        if (path.endsWith("/chat/completions")) {
+            return CHAT;
+        }
+        if (path.endsWith("/embeddings")) {
+            return EMBEDDING;
+        }
+        if (path.endsWith("/audio/transcriptions") || path.endsWith("/audio/translations")) {
+            return TRANSCRIPTION;
+        }
+        if (path.endsWith("/audio/speech")) {
+            return SPEECH;
+        }
+        if (path.contains("/images/")) {
+            return IMAGE;
+        }
+        return OTHER;
+    }
+}
@@ -1,43 +1,54 @@
 package com.example.config;
 
+import com.example.service.StructuralTextSplitter;
+import com.example.service.VectorCollectionRepository;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
 import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
 import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
-import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 public class PGVectorLoader {
 
     private static final Logger logger = LoggerFactory.getLogger(PGVectorLoader.class);
-    private final VectorStore vectorStore;
-    private final JdbcClient jdbcClient;
+    private final EmbeddingModel embeddingModel;
+    private final VectorCollectionRepository collectionRepository;
+    private final StructuralTextSplitter textSplitter;
+    private final String collection;
 
     @Value("classpath:rag_data/Constitution_of_the_Republic_of_Bulgaria.pdf")
     private Resource pdfResource;
 
-    public PGVectorLoader(VectorStore vectorStore,
-                          JdbcClient jdbcClient) {
+    public PGVectorLoader(EmbeddingModel embeddingModel,
+                          VectorCollectionRepository collectionRepository,
+                          StructuralTextSplitter textSplitter,
+                          @Value("${rag.collection.default:constitution}") String collection) {
 
-        this.vectorStore = vectorStore;
-        this.jdbcClient = jdbcClient;
+        this.embeddingModel = embeddingModel;
+        this.collectionRepository = collectionRepository;
+        this.textSplitter = textSplitter;
+        this.collection = collection;
     }
 
     @PostConstruct
     public void init() {
 
-        Integer count = jdbcClient
-                .sql("select COUNT(*) from vector_store")
-                .query(Integer.class)
-                .single();
+        // Vectors stored before vector_store was partitioned belong to the default collection
+        collectionRepository.migrateUnpartitioned(collection);
+
+        long count = collectionRepository.count(collection);
 
-        logger.info("Count of vectors in the database: {}", count);
+        logger.info("Count of vectors in collection '{}': {}", collection, count);
 
         if (count == 0) {
             logger.info("Initializing PG Vector Store Load!!");
@@ -50,9 +61,10 @@ public class PGVectorLoader {
             PagePdfDocumentReader reader
                     = new PagePdfDocumentReader(pdfResource, config);
 
-            var textSplitter = new TokenTextSplitter();
-
-            vectorStore.accept(textSplitter.apply(reader.get()));
+            List<Document> documents = textSplitter.apply(reader.get());
+            List<float[]> embeddings = embeddingModel.embed(documents,
+                    EmbeddingOptionsBuilder.builder().build(), new TokenCountBatchingStrategy());
+            collectionRepository.save(collection, documents, embeddings);
 
             logger.info("Application is Started and Ready to Serve");
         }
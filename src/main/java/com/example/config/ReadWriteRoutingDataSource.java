@@ -0,0 +1,40 @@
+package com.example.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.function.Supplier;
+
+/**
+ * Sends connections to the write pool unless the caller runs inside {@link #read(Supplier)}, which uses the
+ * read pool instead. Only work that tolerates replica lag, such as similarity searches, should read.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        READ, WRITE
+    }
+
+    private static final ThreadLocal<Route> ROUTE = new ThreadLocal<>();
+
+    public static <T> T read(Supplier<T> work) {
+
+        Route previous = ROUTE.get();
+        ROUTE.set(Route.READ);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                ROUTE.remove();
+            } else {
+                ROUTE.set(previous);
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+
+        Route route = ROUTE.get();
+        return route != null ? route : Route.WRITE;
+    }
+}
@@ -1,12 +1,12 @@
 package com.example.config;
 
+import com.example.service.StructuralTextSplitter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
 import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -25,7 +25,8 @@ public class VectorLoader {
     private Resource pdfResource;
 
     @Bean
-    SimpleVectorStore simpleVectorStore(EmbeddingModel embeddingModel) {
+    SimpleVectorStore simpleVectorStore(EmbeddingModel embeddingModel,
+                                        StructuralTextSplitter textSplitter) {
 
         SimpleVectorStore vectorStore = SimpleVectorStore.builder(embeddingModel)
                 .build();
@@ -49,8 +50,6 @@ public class VectorLoader {
             PagePdfDocumentReader reader
                     = new PagePdfDocumentReader(pdfResource, config);
 
-            var textSplitter = new TokenTextSplitter();
-
             List<Document> docs =
                     textSplitter.apply(reader.get());
 
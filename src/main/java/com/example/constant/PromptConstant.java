@@ -37,6 +37,33 @@ public final class PromptConstant {
     Provide a list of achievements for {player}.
     """;
 
+    // RAG prompt, static instructions as the system message and the question last, so requests share a prefix
+    public static final String RAG_SYSTEM_PROMPT = """
+            Answer the question using the information provided in the DOCUMENTS section.
+            If the answer is not found or you're unsure, respond with "I don't know."
+            """;
+
+    public static final String RAG_PROMPT_TEMPLATE = """
+            DOCUMENTS:
+            {documents}
+            
+            QUESTION:
+            {input}
+            """;
+
+    // Rolling summary of older conversation turns
+    public static final String CONVERSATION_SUMMARY_PROMPT = """
+            Update the summary of a conversation between a user and an assistant with the new turns below.
+            Keep names, facts, decisions and open questions, drop small talk.
+            Answer with the updated summary only, in at most {maxWords} words.
+            
+            CURRENT SUMMARY:
+            {summary}
+            
+            NEW TURNS:
+            {turns}
+            """;
+
     private PromptConstant() {
     }
 
@@ -1,9 +1,13 @@
 package com.example.controller;
 
 import com.example.constant.PromptConstant;
+import com.example.metrics.AiMetrics;
 import com.example.model.Achievement;
 import com.example.model.Player;
+import com.example.service.ConversationMemory;
+import com.example.service.ModelRouter;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
@@ -12,6 +16,8 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
@@ -20,7 +26,10 @@ import org.springframework.ai.converter.BeanOutputConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -35,19 +44,32 @@ import java.util.Objects;
 @Tag(name = "AI Chat API", description = "Endpoints for retrieving AI-generated information about celebrities, sports players, and achievements")
 public class AIChatController {
 
+    static final String INVALID_CONVERSATION_ID =
+            "Error: conversationId must be 1 to 64 letters, digits, '-' or '_'.";
+
     private final ChatClient chatClient;
+    private final AiMetrics aiMetrics;
+    private final ModelRouter modelRouter;
+    private final ConversationMemory conversationMemory;
 
     @Value("classpath:prompts/celeb-details.st")
     private Resource celebPrompt;
 
-    public AIChatController(ChatClient.Builder builder) {
+    public AIChatController(ChatClient.Builder builder,
+                            AiMetrics aiMetrics,
+                            ModelRouter modelRouter,
+                            ConversationMemory conversationMemory) {
 
         this.chatClient = builder.build();
+        this.aiMetrics = aiMetrics;
+        this.modelRouter = modelRouter;
+        this.conversationMemory = conversationMemory;
     }
 
     @Operation(
             summary = "General AI chat prompt",
-            description = "Send a message to the AI and receive a response"
+            description = "Send a message to the AI and receive a response. With a conversationId the previous turns "
+                    + "of that conversation are sent along, summarised once they grow long"
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -62,14 +84,62 @@ public class AIChatController {
             )
     })
     @GetMapping
-    public String prompt(@RequestParam @NotNull String message) {
-
-        return Objects.requireNonNull(chatClient.prompt(message)
-                        .call()
-                        .chatResponse())
-                .getResult()
-                .getOutput()
-                .getText();
+    public String prompt(@RequestParam @NotNull String message,
+                         @Parameter(
+                                 description = "Continues the server-side conversation with this id, letters, digits, '-' and '_' only",
+                                 example = "support-4711"
+                         )
+                         @RequestParam(required = false) String conversationId) {
+
+        if (conversationId != null && !ConversationMemory.isValidId(conversationId)) {
+            return INVALID_CONVERSATION_ID;
+        }
+        List<Message> history = conversationId != null ? conversationMemory.get(conversationId) : List.of();
+
+        ModelRouter.Route route = modelRouter.route(ModelRouter.Task.FREE_FORM, message, null);
+        String answer = modelRouter.call(route, ModelRouter.Task.FREE_FORM, options ->
+                Objects.requireNonNull(chatClient.prompt()
+                                .messages(history)
+                                .user(message)
+                                .options(options)
+                                .call()
+                                .chatResponse())
+                        .getResult()
+                        .getOutput()
+                        .getText());
+
+        if (conversationId != null && answer != null) {
+            conversationMemory.add(conversationId, List.of(new UserMessage(message), new AssistantMessage(answer)));
+        }
+        return answer;
+    }
+
+    @Operation(
+            summary = "Delete a conversation",
+            description = "Deletes the stored turns and summary of a conversation, the next message with its id starts over"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "204",
+                    description = "Conversation deleted, or there was none with this id"
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid conversation id",
+                    content = @Content(
+                            mediaType = "text/plain",
+                            examples = @ExampleObject(value = INVALID_CONVERSATION_ID)
+                    )
+            )
+    })
+    @DeleteMapping("/conversations/{conversationId}")
+    public ResponseEntity<String> deleteConversation(@PathVariable String conversationId) {
+
+        if (!ConversationMemory.isValidId(conversationId)) {
+            return ResponseEntity.badRequest().body(INVALID_CONVERSATION_ID);
+        }
+        conversationMemory.clear(conversationId);
+        return ResponseEntity.noContent().build();
     }
 
     @Operation(
@@ -110,18 +180,22 @@ public class AIChatController {
 
 //        PromptTemplate template = new PromptTemplate(message);
 //        PromptTemplate template = new PromptTemplate(PromptConstants.CELEB_PROMPT_TEMPLATE);
-        PromptTemplate template = new PromptTemplate(celebPrompt);
-
-        Prompt prompt = template.create(
-                Map.of("name", name)
-        );
-
-        return Objects.requireNonNull(chatClient.prompt(prompt)
-                        .call()
-                        .chatResponse())
-                .getResult()
-                .getOutput()
-                .getText();
+        Prompt prompt = aiMetrics.time(AiMetrics.Stage.PROMPT_RENDER, () -> {
+            PromptTemplate template = new PromptTemplate(celebPrompt);
+            return template.create(
+                    Map.of("name", name)
+            );
+        });
+
+        ModelRouter.Route route = modelRouter.route(ModelRouter.Task.FREE_FORM, prompt.getContents(), null);
+        return modelRouter.call(route, ModelRouter.Task.FREE_FORM, options ->
+                Objects.requireNonNull(chatClient.prompt(prompt)
+                                .options(options)
+                                .call()
+                                .chatResponse())
+                        .getResult()
+                        .getOutput()
+                        .getText());
     }
 
     @Operation(
@@ -159,17 +233,23 @@ public class AIChatController {
         UserMessage userMessage = new UserMessage(String.format(PromptConstant.PLAYER_USER_PROMPT_TEMPLATE, name));
         SystemMessage systemMessage = new SystemMessage(PromptConstant.PLAYER_SYSTEM_PROMPT);
 
-        Prompt prompt = new Prompt(List.of(userMessage, systemMessage));
+        // The static system prompt goes first so it forms a prefix the provider can cache
+        Prompt prompt = new Prompt(List.of(systemMessage, userMessage));
 
-        String responseText = Objects.requireNonNull(chatClient.prompt(prompt)
-                        .call()
-                        .chatResponse())
-                .getResult()
-                .getOutput()
-                .getText();
+        // A reply without a player name from the small model is escalated to the large one
+        ModelRouter.Route route = modelRouter.route(ModelRouter.Task.STRUCTURED, prompt.getContents(), null);
+        return modelRouter.call(route, ModelRouter.Task.STRUCTURED, options -> {
+            String responseText = Objects.requireNonNull(chatClient.prompt(prompt)
+                            .options(options)
+                            .call()
+                            .chatResponse())
+                    .getResult()
+                    .getOutput()
+                    .getText();
 
-        assert responseText != null;
-        return converter.convert(responseText);
+            assert responseText != null;
+            return aiMetrics.time(AiMetrics.Stage.OUTPUT_CONVERSION, () -> converter.convert(responseText));
+        }, player -> player != null && player.playerName() != null);
     }
 
     @Operation(
@@ -207,10 +287,18 @@ public class AIChatController {
 
         var message = PromptConstant.PLAYER_ACHIEVEMENT;
 
-        PromptTemplate template = new PromptTemplate(message);
-
-        Prompt prompt = template.create(Map.of("player", name));
-        return chatClient.prompt(prompt).call().entity(new ParameterizedTypeReference<List<Achievement>>() {
+        Prompt prompt = aiMetrics.time(AiMetrics.Stage.PROMPT_RENDER, () -> {
+            PromptTemplate template = new PromptTemplate(message);
+            return template.create(Map.of("player", name));
         });
+
+        // The model call inside entity() is timed as its own stage, what remains is the conversion
+        ModelRouter.Route route = modelRouter.route(ModelRouter.Task.STRUCTURED, prompt.getContents(), null);
+        return modelRouter.call(route, ModelRouter.Task.STRUCTURED, options ->
+                        aiMetrics.time(AiMetrics.Stage.OUTPUT_CONVERSION, () ->
+                                chatClient.prompt(prompt).options(options).call()
+                                        .entity(new ParameterizedTypeReference<List<Achievement>>() {
+                                        })),
+                achievements -> achievements != null && !achievements.isEmpty());
     }
 }
@@ -1,5 +1,11 @@
 package com.example.controller;
 
+import com.example.admission.AdmissionRejectedException;
+import com.example.metrics.AiMetrics;
+import com.example.model.Job;
+import com.example.model.JobType;
+import com.example.service.JobService;
+import com.example.service.TranscriptionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -9,11 +15,8 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.constraints.NotBlank;
-import org.springframework.ai.audio.transcription.AudioTranscriptionPrompt;
 import org.springframework.ai.openai.OpenAiAudioSpeechModel;
 import org.springframework.ai.openai.OpenAiAudioSpeechOptions;
-import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
-import org.springframework.ai.openai.OpenAiAudioTranscriptionOptions;
 import org.springframework.ai.openai.api.OpenAiAudioApi;
 import org.springframework.ai.openai.audio.speech.SpeechPrompt;
 import org.springframework.ai.openai.audio.speech.SpeechResponse;
@@ -22,6 +25,7 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -33,20 +37,29 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/v1/audio")
 @Tag(name = "Audio Processing API", description = "Endpoints for audio transcription and processing")
 public class AudioController {
 
-    private final OpenAiAudioTranscriptionModel openAiAudioTranscriptionModel;
+    private final TranscriptionService transcriptionService;
     private final OpenAiAudioSpeechModel openAiAudioSpeechModel;
+    private final JobService jobService;
+    private final AiMetrics aiMetrics;
 
-    public AudioController(OpenAiAudioTranscriptionModel openAiAudioTranscriptionModel,
-                           OpenAiAudioSpeechModel openAiAudioSpeechModel) {
+    public AudioController(TranscriptionService transcriptionService,
+                           OpenAiAudioSpeechModel openAiAudioSpeechModel,
+                           JobService jobService,
+                           AiMetrics aiMetrics) {
 
-        this.openAiAudioTranscriptionModel = openAiAudioTranscriptionModel;
+        this.transcriptionService = transcriptionService;
         this.openAiAudioSpeechModel = openAiAudioSpeechModel;
+        this.jobService = jobService;
+        this.aiMetrics = aiMetrics;
     }
 
     private static boolean isIsValidAudioFile(MultipartFile file) {
@@ -113,24 +126,7 @@ public class AudioController {
     public String audioTranscription() {
         // Load the audio from resources/audios, used for testing this approach
         String songTitle = "song-1.mp3";
-        //https://platform.openai.com/docs/api-reference/audio/createTranscription
-        OpenAiAudioTranscriptionOptions options
-                = OpenAiAudioTranscriptionOptions
-                .builder()
-                .language("bg")
-                .responseFormat(OpenAiAudioApi.TranscriptResponseFormat.SRT)
-                .temperature(0.5f)
-                .build();
-
-        AudioTranscriptionPrompt prompt
-                = new AudioTranscriptionPrompt(
-                new ClassPathResource("audios/" + songTitle)
-                , options);
-
-        return openAiAudioTranscriptionModel
-                .call(prompt)
-                .getResult()
-                .getOutput();
+        return transcriptionService.transcribe(new ClassPathResource("audios/" + songTitle), "bg");
     }
 
     @Operation(
@@ -222,7 +218,8 @@ public class AudioController {
                 return "Error: Language must be either 'en' (English) or 'bg' (Bulgarian).";
             }
 
-            ByteArrayResource audioResource = new ByteArrayResource(file.getBytes()) {
+            byte[] audio = aiMetrics.time(AiMetrics.Stage.UPLOAD, file::getBytes);
+            ByteArrayResource audioResource = new ByteArrayResource(audio) {
                 @Override
                 public String getFilename() {
 
@@ -230,22 +227,88 @@ public class AudioController {
                 }
             };
 
-            OpenAiAudioTranscriptionOptions options = OpenAiAudioTranscriptionOptions
-                    .builder()
-                    .language(language)
-                    .responseFormat(OpenAiAudioApi.TranscriptResponseFormat.SRT)
-                    .temperature(0.5f)
-                    .build();
+            return transcriptionService.transcribe(audioResource, language);
 
-            AudioTranscriptionPrompt prompt = new AudioTranscriptionPrompt(audioResource, options);
+        } catch (IOException e) {
+            return "Error processing audio file: " + e.getMessage();
+        }
+    }
 
-            return openAiAudioTranscriptionModel
-                    .call(prompt)
-                    .getResult()
-                    .getOutput();
+    @Operation(
+            summary = "Submit an audio transcription job",
+            description = "Queues an uploaded MP3 or MP4 file for transcription and returns the job right away. " +
+                    "Follow it through /api/v1/jobs/{id}, its /events stream or the optional callback URL."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Job accepted",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = Job.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid file format, missing parameters or callback URL not allowed",
+                    content = @Content(
+                            mediaType = "text/plain",
+                            examples = @ExampleObject(
+                                    value = "Error: Only MP3 and MP4 audio files are supported."
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Job queue is full"
+            )
+    })
+    @PostMapping(value = "/transcription-jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> submitTranscriptionJob(
+            @Parameter(
+                    description = "Audio file to transcribe (MP3 or MP4)",
+                    required = true,
+                    content = @Content(mediaType = "audio/mpeg, audio/mp4")
+            )
+            @RequestParam("file") MultipartFile file,
 
+            @Parameter(
+                    description = "Language code (en for English, bg for Bulgarian)",
+                    schema = @Schema(type = "string", allowableValues = {"en", "bg"}, defaultValue = "en")
+            )
+            @RequestParam(value = "language", defaultValue = "en") String language,
+
+            @Parameter(description = "Higher values run first")
+            @RequestParam(value = "priority", defaultValue = "0") int priority,
+
+            @Parameter(description = "https URL on an allowed host that receives the finished job as a JSON POST")
+            @RequestParam(value = "callbackUrl", required = false) String callbackUrl) {
+
+        if (!isIsValidAudioFile(file)) {
+            return ResponseEntity.badRequest().body("Error: Only MP3 and MP4 audio files are supported.");
+        }
+
+        if (!language.equals("en") && !language.equals("bg")) {
+            return ResponseEntity.badRequest().body("Error: Language must be either 'en' (English) or 'bg' (Bulgarian).");
+        }
+
+        try {
+            Map<String, String> params = Map.of(
+                    "language", language,
+                    "filename", file.getOriginalFilename() == null ? "audio.mp3" : file.getOriginalFilename());
+
+            byte[] audio = aiMetrics.time(AiMetrics.Stage.UPLOAD, file::getBytes);
+            Job job = jobService.submit(JobType.TRANSCRIPTION, priority, params, audio, callbackUrl);
+
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/v1/jobs/" + job.id()))
+                    .body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Error: " + e.getMessage());
         } catch (IOException e) {
-            return "Error processing audio file: " + e.getMessage();
+            return ResponseEntity.badRequest().body("Error processing audio file: " + e.getMessage());
         }
     }
 
@@ -285,7 +348,8 @@ public class AudioController {
                     .build();
 
             SpeechPrompt speechPrompt = new SpeechPrompt(prompt, options);
-            SpeechResponse response = openAiAudioSpeechModel.call(speechPrompt);
+            SpeechResponse response = aiMetrics.time(AiMetrics.Stage.MODEL_CALL, options.getModel(),
+                    () -> openAiAudioSpeechModel.call(speechPrompt));
 
             byte[] audioBytes = response.getResult().getOutput();
             ByteArrayResource resource = new ByteArrayResource(audioBytes);
@@ -303,6 +367,8 @@ public class AudioController {
                                     .build().toString())
                     .body(resource);
 
+        } catch (AdmissionRejectedException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
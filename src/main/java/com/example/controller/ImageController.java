@@ -1,20 +1,27 @@
 package com.example.controller;
 
+import com.example.metrics.AiMetrics;
+import com.example.model.Job;
+import com.example.model.JobType;
+import com.example.model.ImageDescription;
+import com.example.service.ImageDescriptionService;
+import com.example.service.GeneratedImageStore;
+import com.example.service.ImageGenerationService;
+import com.example.service.JobService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.ai.image.ImageModel;
-import org.springframework.ai.image.ImagePrompt;
-import org.springframework.ai.image.ImageResponse;
-import org.springframework.ai.openai.OpenAiImageOptions;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.MimeType;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -24,23 +31,41 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.validation.constraints.NotNull;
 import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/v1/image")
 @Tag(name = "Image Analysis API", description = "Endpoints for analyzing and describing images using AI")
 public class ImageController {
 
-    private final ChatModel chatModel;
-    private final ImageModel imageModel;
+    private static final String IMAGE_BYTES_SAVED_HEADER = "X-Image-Bytes-Saved";
+    private static final String IMAGE_TOKENS_SAVED_HEADER = "X-Image-Tokens-Saved";
+    private static final String IMAGE_DESCRIPTION_CACHE_HEADER = "X-Image-Description-Cache";
 
-    public ImageController(ChatModel chatModel,
-                           ImageModel imageModel) {
+    private final ImageDescriptionService imageDescriptionService;
+    private final ImageGenerationService imageGenerationService;
+    private final GeneratedImageStore generatedImageStore;
+    private final JobService jobService;
+    private final AiMetrics aiMetrics;
 
-        this.chatModel = chatModel;
-        this.imageModel = imageModel;
+    public ImageController(ImageDescriptionService imageDescriptionService,
+                           ImageGenerationService imageGenerationService,
+                           GeneratedImageStore generatedImageStore,
+                           JobService jobService,
+                           AiMetrics aiMetrics) {
+
+        this.imageDescriptionService = imageDescriptionService;
+        this.imageGenerationService = imageGenerationService;
+        this.generatedImageStore = generatedImageStore;
+        this.jobService = jobService;
+        this.aiMetrics = aiMetrics;
     }
 
     @Operation(
@@ -63,18 +88,22 @@ public class ImageController {
     public String describeImage() {
         // Load the image from resources/images, used for testing this approach
         String imageName = "plane.png";
-        return ChatClient.create(chatModel)
-                .prompt()
-                .user(useSpec ->
-                        useSpec.text("Explain what you see in the image")
-                                .media(MimeTypeUtils.IMAGE_PNG, new ClassPathResource("images/" + imageName)))
-                .call()
-                .content();
+        try {
+            byte[] image = new ClassPathResource("images/" + imageName).getContentAsByteArray();
+            return imageDescriptionService
+                    .describe(image, MimeTypeUtils.IMAGE_PNG, imageName)
+                    .description();
+        } catch (IOException e) {
+            return "Error processing image: " + e.getMessage();
+        }
     }
 
     @Operation(
             summary = "Describe an uploaded image",
-            description = "Accepts an uploaded PNG or JPEG image and returns an AI-generated description of the image content"
+            description = "Accepts an uploaded PNG or JPEG image and returns an AI-generated description of the image content. " +
+                    "The image is downscaled and re-encoded before it is sent to the model; the X-Image-Bytes-Saved and " +
+                    "X-Image-Tokens-Saved headers report the savings. Images close to one described before are answered " +
+                    "from the perceptual hash cache (X-Image-Description-Cache: HIT)."
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -96,41 +125,42 @@ public class ImageController {
                                     value = "Error: Only PNG and JPEG images are supported."
                             )
                     )
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Image preprocessing or the vision model is at capacity, see Retry-After"
             )
     })
     @PostMapping(value = "/describe-image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public String describeUploadedImage(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<String> describeUploadedImage(@RequestParam("file") MultipartFile file) {
 
         try {
             String contentType = file.getContentType();
             if (contentType == null || (!contentType.equals(MediaType.IMAGE_PNG_VALUE) &&
                     !contentType.equals(MediaType.IMAGE_JPEG_VALUE))) {
-                return "Error: Only PNG and JPEG images are supported.";
+                return ResponseEntity.badRequest().body("Error: Only PNG and JPEG images are supported.");
             }
 
-            ByteArrayResource fileResource = new ByteArrayResource(file.getBytes()) {
-                @Override
-                public String getFilename() {
-
-                    return file.getOriginalFilename();
-                }
-            };
-
-            return ChatClient.create(chatModel)
-                    .prompt()
-                    .user(useSpec ->
-                            useSpec.text("Explain what you see in the image")
-                                    .media(MimeType.valueOf(contentType), fileResource))
-                    .call()
-                    .content();
+            byte[] image = aiMetrics.time(AiMetrics.Stage.UPLOAD, file::getBytes);
+            ImageDescription description = imageDescriptionService.describe(
+                    image, MimeType.valueOf(contentType), file.getOriginalFilename());
+
+            return ResponseEntity.ok()
+                    .header(IMAGE_BYTES_SAVED_HEADER, String.valueOf(description.bytesSaved()))
+                    .header(IMAGE_TOKENS_SAVED_HEADER, String.valueOf(description.tokensSaved()))
+                    .header(IMAGE_DESCRIPTION_CACHE_HEADER, description.cached() ? "HIT" : "MISS")
+                    .body(description.description());
         } catch (IOException e) {
-            return "Error processing image: " + e.getMessage();
+            return ResponseEntity.badRequest().body("Error processing image: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
         }
     }
 
     @Operation(
             summary = "Generate an image based on a text prompt",
-            description = "Creates an AI-generated image using the provided text prompt and returns the URL to the image"
+            description = "Creates an AI-generated image using the provided text prompt and returns the URL to the image. " +
+                    "Images are stored locally and served from /api/v1/image/generated/{key}; repeating a prompt reuses the stored image"
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -139,7 +169,7 @@ public class ImageController {
                     content = @Content(
                             mediaType = "text/plain",
                             examples = @ExampleObject(
-                                    value = "https://example.com/generated-images/image-123456.png"
+                                    value = "http://localhost:8080/api/v1/image/generated/3f79bb7b435b05321651daefd374cdc681dc06faa65e374e38337b88ca046dea"
                             )
                     )
             ),
@@ -166,16 +196,96 @@ public class ImageController {
     })
     @GetMapping("{prompt}")
     public String generateImage(@PathVariable @NotNull String prompt) {
-        //https://platform.openai.com/docs/api-reference/images/create
-        ImageResponse imageResponse = imageModel.call(
-                new ImagePrompt(prompt, OpenAiImageOptions.builder()
-                        .withN(1)
-                        .withWidth(1024)
-                        .withHeight(1024)
-                        .withQuality("hd")
-                        .build()));
-        return imageResponse.getResult().getOutput().getUrl();
 
+        String key = imageGenerationService.generate(prompt);
+        return ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path(ImageGenerationService.path(key))
+                .toUriString();
     }
-}
 
+    @Operation(
+            summary = "Download a generated image",
+            description = "Serves a previously generated image from the local image store. Responses are immutable, " +
+                    "carry an ETag and support Range requests."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Image found",
+                    content = @Content(
+                            mediaType = "image/png",
+                            schema = @Schema(type = "string", format = "binary")
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Unknown image key"
+            )
+    })
+    @GetMapping("/generated/{key}")
+    public ResponseEntity<Resource> getGeneratedImage(
+            @Parameter(description = "Key returned in the generated image URL", required = true)
+            @PathVariable String key) {
+
+        return generatedImageStore.find(key)
+                .map(image -> ResponseEntity.ok()
+                        .contentType(MediaType.IMAGE_PNG)
+                        .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                        .eTag(key)
+                        .body(image))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(
+            summary = "Submit an image generation job",
+            description = "Queues an HD image generation for the prompt and returns the job right away. " +
+                    "Follow it through /api/v1/jobs/{id}, its /events stream or the optional callback URL."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Job accepted",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = Job.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Callback URL not allowed",
+                    content = @Content(
+                            mediaType = "text/plain",
+                            examples = @ExampleObject(
+                                    value = "Error: callbackUrl must be an https URL with a host"
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Job queue is full"
+            )
+    })
+    @PostMapping("/generation-jobs")
+    public ResponseEntity<?> submitGenerationJob(
+            @Parameter(description = "Text prompt for the image", required = true)
+            @RequestParam @NotNull String prompt,
+
+            @Parameter(description = "Higher values run first")
+            @RequestParam(value = "priority", defaultValue = "0") int priority,
+
+            @Parameter(description = "https URL on an allowed host that receives the finished job as a JSON POST")
+            @RequestParam(value = "callbackUrl", required = false) String callbackUrl) {
+
+        try {
+            Job job = jobService.submit(JobType.IMAGE_GENERATION, priority, Map.of("prompt", prompt), null, callbackUrl);
+
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/v1/jobs/" + job.id()))
+                    .body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Error: " + e.getMessage());
+        }
+    }
+}
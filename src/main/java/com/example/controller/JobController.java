@@ -0,0 +1,82 @@
+package com.example.controller;
+
+import com.example.model.Job;
+import com.example.service.JobService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/v1/jobs")
+@Tag(name = "Jobs API", description = "Endpoints for following asynchronous audio and image jobs")
+public class JobController {
+
+    private final JobService jobService;
+
+    public JobController(JobService jobService) {
+
+        this.jobService = jobService;
+    }
+
+    @Operation(
+            summary = "Get job status",
+            description = "Returns the current state of a job and its result once it has finished"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Job found",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = Job.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Unknown job id"
+            )
+    })
+    @GetMapping("/{id}")
+    public ResponseEntity<Job> getJob(
+            @Parameter(description = "Job id returned on submission", required = true)
+            @PathVariable UUID id) {
+
+        return ResponseEntity.of(jobService.find(id));
+    }
+
+    @Operation(
+            summary = "Stream job status",
+            description = "Server-sent events with a 'status' event on every state change. The stream completes once the job has finished"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Event stream opened",
+                    content = @Content(mediaType = "text/event-stream")
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Unknown job id"
+            )
+    })
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(
+            @Parameter(description = "Job id returned on submission", required = true)
+            @PathVariable UUID id) {
+
+        return ResponseEntity.of(jobService.subscribe(id));
+    }
+}
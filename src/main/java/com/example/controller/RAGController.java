@@ -1,53 +1,83 @@
 package com.example.controller;
 
+import com.example.constant.PromptConstant;
+import com.example.metrics.AiMetrics;
+import com.example.model.BatchSearchRequest;
+import com.example.model.BatchSearchResult;
+import com.example.service.BatchRetrievalService;
+import com.example.service.ConversationMemory;
+import com.example.service.HotQuestionWarmer;
+import com.example.service.ModelRouter;
+import com.example.service.RetrievalService;
+import com.example.service.VectorCollectionRepository;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.constraints.NotBlank;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/v1/rag")
 @Tag(name = "RAG API", description = "Retrieval-Augmented Generation endpoints")
 public class RAGController {
 
-    private static final Logger logger = LoggerFactory.getLogger(RAGController.class);
+    private static final int DEFAULT_TOP_K = 5;
+    private static final int MAX_TOP_K = 100;
+    private static final String INVALID_COLLECTION
+            = "Error: collection must be 1 to 48 lowercase letters, digits or '_'.";
+
     private final ChatClient chatClient;
-    private final VectorStore vectorStore;
-    private final String prompt = """
-            Answer the question using the information provided in the DOCUMENTS section.
-            If the answer is not found or you're unsure, respond with "I don't know."
-            
-            QUESTION:
-            {input}
-            
-            DOCUMENTS:
-            {documents}
-            """;
+    private final RetrievalService retrievalService;
+    private final AiMetrics aiMetrics;
+    private final ModelRouter modelRouter;
+    private final ConversationMemory conversationMemory;
+    private final BatchRetrievalService batchRetrievalService;
+    private final HotQuestionWarmer hotQuestionWarmer;
+    private final int maxBatchQueries;
 
     public RAGController(ChatClient.Builder chatClient,
-                         VectorStore vectorStore) {
+                         RetrievalService retrievalService,
+                         AiMetrics aiMetrics,
+                         ModelRouter modelRouter,
+                         ConversationMemory conversationMemory,
+                         BatchRetrievalService batchRetrievalService,
+                         HotQuestionWarmer hotQuestionWarmer,
+                         @Value("${rag.search.batch.max-queries:500}") int maxBatchQueries) {
 
         this.chatClient = chatClient.build();
-        this.vectorStore = vectorStore;
+        this.retrievalService = retrievalService;
+        this.aiMetrics = aiMetrics;
+        this.modelRouter = modelRouter;
+        this.conversationMemory = conversationMemory;
+        this.batchRetrievalService = batchRetrievalService;
+        this.hotQuestionWarmer = hotQuestionWarmer;
+        this.maxBatchQueries = maxBatchQueries;
     }
 
     @Operation(
@@ -81,13 +111,30 @@ public class RAGController {
                     required = true,
                     example = "What is the capital of France?"
             )
-            @NotBlank @RequestParam String q) {
+            @NotBlank @RequestParam String q,
+
+            @Parameter(
+                    description = "Continues the server-side conversation with this id, letters, digits, '-' and '_' only",
+                    example = "support-4711"
+            )
+            @RequestParam(required = false) String conversationId) {
+
+        if (conversationId != null && !ConversationMemory.isValidId(conversationId)) {
+            return AIChatController.INVALID_CONVERSATION_ID;
+        }
+        List<Message> history = conversationId != null ? conversationMemory.get(conversationId) : List.of();
 
-        return chatClient
+        ModelRouter.Route route = modelRouter.route(ModelRouter.Task.FREE_FORM, q, null);
+        String answer = modelRouter.call(route, ModelRouter.Task.FREE_FORM, options -> chatClient
                 .prompt()
+                .messages(history)
                 .user(q)
+                .options(options)
                 .call()
-                .content();
+                .content());
+
+        remember(conversationId, q, answer);
+        return answer;
     }
 
     @Operation(
@@ -121,42 +168,118 @@ public class RAGController {
                     required = true,
                     example = "What is the capital of Bulgaria?"
             )
-            @NotBlank @RequestParam String q) {
+            @NotBlank @RequestParam String q,
+
+            @Parameter(
+                    description = "Continues the server-side conversation with this id, letters, digits, '-' and '_' only",
+                    example = "support-4711"
+            )
+            @RequestParam(required = false) String conversationId,
+
+            @Parameter(
+                    description = "Searches only this document collection, all collections if omitted",
+                    example = "constitution"
+            )
+            @RequestParam(required = false) String collection) {
+
+        if (conversationId != null && !ConversationMemory.isValidId(conversationId)) {
+            return AIChatController.INVALID_CONVERSATION_ID;
+        }
+        if (collection != null && !VectorCollectionRepository.isValidName(collection)) {
+            return INVALID_COLLECTION;
+        }
+        List<Message> history = conversationId != null ? conversationMemory.get(conversationId) : List.of();
 
-        PromptTemplate template
-                = new PromptTemplate(prompt);
+        // Frequent questions are answered from documents the warmer has already retrieved
+        Optional<List<Document>> warmDocuments = hotQuestionWarmer.lookup(q, collection);
+        aiMetrics.cacheLookup("rag-context", warmDocuments.isPresent());
+        List<Document> documents = warmDocuments.orElseGet(() -> retrievalService.search(q, collection));
 
-        Map<String, Object> promptParams
-                = new HashMap<>();
+        // Static instructions, then the history, then the documents and the question, so that consecutive
+        // requests share as long a prefix as possible for the provider's prompt cache
+        Prompt prompt = aiMetrics.time(AiMetrics.Stage.PROMPT_RENDER, () -> {
+            PromptTemplate template
+                    = new PromptTemplate(PromptConstant.RAG_PROMPT_TEMPLATE);
 
-        promptParams.put("input", q);
-        promptParams.put("documents", findSimilarData(q));
+            Map<String, Object> promptParams
+                    = new HashMap<>();
 
-        return chatClient
-                .prompt(template.create(promptParams))
-                .call()
-                .content();
+            promptParams.put("input", q);
+            promptParams.put("documents", RetrievalService.joinDocuments(documents));
+
+            List<Message> messages = new ArrayList<>(history.size() + 2);
+            messages.add(new SystemMessage(PromptConstant.RAG_SYSTEM_PROMPT));
+            messages.addAll(history);
+            messages.add(new UserMessage(template.render(promptParams)));
+            return new Prompt(messages);
+        });
+
+        // Well-grounded questions go to the small model, "I don't know" from it is retried on the large one
+        Double topScore = documents.isEmpty() ? null : documents.getFirst().getScore();
+        ModelRouter.Route route = modelRouter.route(ModelRouter.Task.RAG, prompt.getContents(), topScore);
+        String answer = modelRouter.call(route, ModelRouter.Task.RAG, options -> chatClient
+                        .prompt(prompt)
+                        .options(options)
+                        .call()
+                        .content(),
+                result -> result != null && !result.contains("I don't know"));
+        // The question is stored without the documents, they are retrieved again for every turn
+        remember(conversationId, q, answer);
+        return answer;
     }
 
-    private String findSimilarData(String q) {
+    @Operation(
+            summary = "Search many questions at once",
+            description = "Embeds all questions in one request and runs their PGVector top-K lookups in one statement. "
+                    + "Meant for evaluation runs and cache warming, no answers are generated",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Documents per question, in request order, best match first",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    array = @ArraySchema(schema = @Schema(implementation = BatchSearchResult.class))
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "No questions, too many questions, an invalid topK or collection",
+                            content = @Content(
+                                    mediaType = "text/plain",
+                                    examples = @ExampleObject(
+                                            value = "Error: At most 500 queries per batch."
+                                    )
+                            )
+                    )
+            }
+    )
+    @PostMapping("/search/batch")
+    public ResponseEntity<?> searchBatch(@RequestBody BatchSearchRequest request) {
 
-        List<Document> documents =
-                vectorStore.similaritySearch(
-                        SearchRequest
-                                .builder()
-                                .query(q)
-                                .topK(5)
-                                .build());
+        List<String> queries = request.queries();
+        int topK = request.topK() != null ? request.topK() : DEFAULT_TOP_K;
 
-        if (documents == null || documents.isEmpty()) {
-            logger.debug("No similar documents found for query: {}", q);
-            return "";
+        if (queries == null || queries.isEmpty() || queries.stream().anyMatch(q -> q == null || q.isBlank())) {
+            return ResponseEntity.badRequest().body("Error: queries must be a non-empty list of questions.");
+        }
+        if (queries.size() > maxBatchQueries) {
+            return ResponseEntity.badRequest().body("Error: At most " + maxBatchQueries + " queries per batch.");
+        }
+        if (topK < 1 || topK > MAX_TOP_K) {
+            return ResponseEntity.badRequest().body("Error: topK must be between 1 and " + MAX_TOP_K + ".");
         }
-        return documents
-                .stream()
-                .map(Document::getFormattedContent)
-                .collect(Collectors.joining());
+        if (request.collection() != null && !VectorCollectionRepository.isValidName(request.collection())) {
+            return ResponseEntity.badRequest().body(INVALID_COLLECTION);
+        }
+
+        return ResponseEntity.ok(batchRetrievalService.search(queries, topK, request.collection()));
     }
 
+    private void remember(String conversationId, String question, String answer) {
+
+        if (conversationId != null && answer != null) {
+            conversationMemory.add(conversationId, List.of(new UserMessage(question), new AssistantMessage(answer)));
+        }
+    }
 }
 
@@ -0,0 +1,186 @@
+package com.example.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and counters for the AI request path, tagged by endpoint and model.
+ * <p>
+ * Stages are timed exclusively: a stage that runs inside another one (the embedding inside a vector search,
+ * the model call inside output conversion) is subtracted from the outer stage, so the stages of a request add
+ * up to the time spent in them. The endpoint tag is the matched request mapping, or {@code background} for
+ * work outside a request such as jobs and loaders.
+ */
+@Component
+public class AiMetrics {
+
+    public static final String STAGE_TIMER = "ai.request.stage";
+    public static final String TOKEN_COUNTER = "ai.tokens";
+    public static final String CACHE_COUNTER = "ai.cache.requests";
+    public static final String PROMPT_CACHED = "ai.prompt.cached";
+    public static final String NO_MODEL = "none";
+
+    private static final String BACKGROUND = "background";
+
+    public enum Stage {
+        UPLOAD, PREPROCESS, EMBED, VECTOR_SEARCH, PROMPT_RENDER, MODEL_CALL, OUTPUT_CONVERSION;
+
+        String tag() {
+
+            return name().toLowerCase();
+        }
+    }
+
+    @FunctionalInterface
+    public interface StageWork<T, E extends Exception> {
+
+        T run() throws E;
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final ThreadLocal<StageTimer> current = new ThreadLocal<>();
+
+    public AiMetrics(MeterRegistry meterRegistry) {
+
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T, E extends Exception> T time(Stage stage, StageWork<T, E> work) throws E {
+
+        return time(stage, NO_MODEL, work);
+    }
+
+    public <T, E extends Exception> T time(Stage stage, String model, StageWork<T, E> work) throws E {
+
+        StageTimer timer = start();
+        try {
+            return work.run();
+        } finally {
+            stop(timer, stage, model);
+        }
+    }
+
+    public StageTimer start() {
+
+        StageTimer timer = new StageTimer(current.get(), System.nanoTime());
+        current.set(timer);
+        return timer;
+    }
+
+    public void stop(StageTimer timer, Stage stage, String model) {
+
+        long elapsed = System.nanoTime() - timer.startNanos;
+        if (current.get() == timer) {
+            current.set(timer.parent);
+        }
+        if (timer.parent != null) {
+            timer.parent.nestedNanos += elapsed;
+        }
+
+        Timer.builder(STAGE_TIMER)
+                .description("Time spent in one stage of an AI request, excluding nested stages")
+                .tag("endpoint", endpoint())
+                .tag("stage", stage.tag())
+                .tag("model", model(model))
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(5))
+                .register(meterRegistry)
+                .record(Math.max(0, elapsed - timer.nestedNanos), TimeUnit.NANOSECONDS);
+    }
+
+    public void recordUsage(String model, Usage usage) {
+
+        if (usage == null) {
+            return;
+        }
+        count("prompt", model, usage.getPromptTokens());
+        count("completion", model, usage.getCompletionTokens());
+        if (usage.getNativeUsage() instanceof OpenAiApi.Usage openAiUsage
+                && openAiUsage.promptTokensDetails() != null) {
+            Integer cached = openAiUsage.promptTokensDetails().cachedTokens();
+            count("cached", model, cached);
+            Integer prompt = usage.getPromptTokens();
+            if (prompt != null && prompt > 0) {
+                DistributionSummary.builder(PROMPT_CACHED)
+                        .description("Share of the prompt tokens of a response served from the provider's prompt cache")
+                        .baseUnit("percent")
+                        .tag("endpoint", endpoint())
+                        .tag("model", model(model))
+                        .publishPercentileHistogram()
+                        .maximumExpectedValue(100.0)
+                        .register(meterRegistry)
+                        .record(cached != null ? 100.0 * cached / prompt : 0.0);
+            }
+        }
+    }
+
+    public void cacheLookup(String cache, boolean hit) {
+
+        Counter.builder(CACHE_COUNTER)
+                .description("Cache lookups on the AI request path")
+                .tag("cache", cache)
+                .tag("result", hit ? "hit" : "miss")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void count(String type, String model, Integer tokens) {
+
+        if (tokens == null || tokens <= 0) {
+            return;
+        }
+        Counter.builder(TOKEN_COUNTER)
+                .description("Tokens reported by the model provider")
+                .baseUnit("tokens")
+                .tag("endpoint", endpoint())
+                .tag("model", model(model))
+                .tag("type", type)
+                .register(meterRegistry)
+                .increment(tokens);
+    }
+
+    private static String model(String model) {
+
+        return model == null || model.isBlank() ? NO_MODEL : model;
+    }
+
+    private static String endpoint() {
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            HttpServletRequest request = servletAttributes.getRequest();
+            // The mapping pattern, not the raw URI, so path variables do not multiply the series
+            if (request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE) instanceof String pattern) {
+                return pattern;
+            }
+        }
+        return BACKGROUND;
+    }
+
+    public static final class StageTimer {
+
+        private final StageTimer parent;
+        private final long startNanos;
+        private long nestedNanos;
+
+        private StageTimer(StageTimer parent, long startNanos) {
+
+            this.parent = parent;
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.metrics;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.observation.ChatModelObservationContext;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.observation.EmbeddingModelObservationContext;
+import org.springframework.ai.image.ImageOptions;
+import org.springframework.ai.image.observation.ImageModelObservationContext;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns the observations Spring AI already emits for chat, embedding and image models and for vector store
+ * queries into {@link AiMetrics} stages, and records the token usage of every model response.
+ */
+@Component
+public class AiObservationHandler implements ObservationHandler<Observation.Context> {
+
+    private final AiMetrics aiMetrics;
+
+    public AiObservationHandler(AiMetrics aiMetrics) {
+
+        this.aiMetrics = aiMetrics;
+    }
+
+    @Override
+    public boolean supportsContext(Observation.Context context) {
+
+        return context instanceof ChatModelObservationContext
+                || context instanceof EmbeddingModelObservationContext
+                || context instanceof ImageModelObservationContext
+                || context instanceof VectorStoreObservationContext;
+    }
+
+    @Override
+    public void onStart(Observation.Context context) {
+
+        context.put(AiMetrics.StageTimer.class, aiMetrics.start());
+    }
+
+    @Override
+    public void onStop(Observation.Context context) {
+
+        AiMetrics.StageTimer timer = context.get(AiMetrics.StageTimer.class);
+        if (timer == null) {
+            return;
+        }
+
+        switch (context) {
+            case ChatModelObservationContext chat -> {
+                String model = chatModel(chat);
+                aiMetrics.stop(timer, AiMetrics.Stage.MODEL_CALL, model);
+                ChatResponse response = chat.getResponse();
+                if (response != null && response.getMetadata() != null) {
+                    aiMetrics.recordUsage(model, response.getMetadata().getUsage());
+                }
+            }
+            case EmbeddingModelObservationContext embedding -> {
+                EmbeddingOptions options = embedding.getRequest().getOptions();
+                String model = options != null ? options.getModel() : null;
+                aiMetrics.stop(timer, AiMetrics.Stage.EMBED, model);
+                EmbeddingResponse response = embedding.getResponse();
+                if (response != null && response.getMetadata() != null) {
+                    aiMetrics.recordUsage(model, response.getMetadata().getUsage());
+                }
+            }
+            case ImageModelObservationContext image -> {
+                ImageOptions options = image.getRequest().getOptions();
+                aiMetrics.stop(timer, AiMetrics.Stage.MODEL_CALL, options != null ? options.getModel() : null);
+            }
+            default -> aiMetrics.stop(timer, AiMetrics.Stage.VECTOR_SEARCH, AiMetrics.NO_MODEL);
+        }
+    }
+
+    private static String chatModel(ChatModelObservationContext context) {
+
+        ChatOptions options = context.getRequest().getOptions();
+        if (options != null && options.getModel() != null) {
+            return options.getModel();
+        }
+        ChatResponse response = context.getResponse();
+        return response != null && response.getMetadata() != null ? response.getMetadata().getModel() : null;
+    }
+}
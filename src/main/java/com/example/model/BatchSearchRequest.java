@@ -0,0 +1,10 @@
+package com.example.model;
+
+import java.util.List;
+
+/**
+ * Questions to search in one call, the number of documents to return for each, 5 when omitted, and the
+ * collection to search, all collections when omitted.
+ */
+public record BatchSearchRequest(List<String> queries, Integer topK, String collection) {
+}
@@ -0,0 +1,9 @@
+package com.example.model;
+
+import java.util.List;
+
+/**
+ * The documents found for one query of a batch, best match first.
+ */
+public record BatchSearchResult(String query, List<RetrievedDocument> documents) {
+}
@@ -0,0 +1,9 @@
+package com.example.model;
+
+import java.util.List;
+
+/**
+ * A conversation as stored: the rolling summary of older turns and the turns after it, oldest first.
+ */
+public record ConversationState(String summary, long summarizedUntil, List<ConversationTurn> turns) {
+}
@@ -0,0 +1,7 @@
+package com.example.model;
+
+/**
+ * One stored message of a conversation; {@code role} is the Spring AI message type, e.g. {@code user}.
+ */
+public record ConversationTurn(long id, String role, String content) {
+}
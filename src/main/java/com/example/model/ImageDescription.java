@@ -0,0 +1,7 @@
+package com.example.model;
+
+public record ImageDescription(String description,
+                               boolean cached,
+                               int bytesSaved,
+                               int tokensSaved) {
+}
@@ -0,0 +1,20 @@
+package com.example.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Job(UUID id,
+                  JobType type,
+                  JobStatus status,
+                  int priority,
+                  Map<String, String> params,
+                  String result,
+                  String error,
+                  String callbackUrl,
+                  Instant createdAt,
+                  Instant updatedAt) {
+}
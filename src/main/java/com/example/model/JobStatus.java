@@ -0,0 +1,13 @@
+package com.example.model;
+
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED;
+
+    public boolean isTerminal() {
+
+        return this == SUCCEEDED || this == FAILED;
+    }
+}
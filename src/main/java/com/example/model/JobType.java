@@ -0,0 +1,6 @@
+package com.example.model;
+
+public enum JobType {
+    TRANSCRIPTION,
+    IMAGE_GENERATION
+}
@@ -0,0 +1,25 @@
+package com.example.model;
+
+import org.springframework.util.MimeType;
+
+public record PreprocessedImage(byte[] data,
+                                MimeType mimeType,
+                                int originalBytes,
+                                int originalTokens,
+                                int processedTokens) {
+
+    public int processedBytes() {
+
+        return data.length;
+    }
+
+    public int bytesSaved() {
+
+        return originalBytes - data.length;
+    }
+
+    public int tokensSaved() {
+
+        return originalTokens - processedTokens;
+    }
+}
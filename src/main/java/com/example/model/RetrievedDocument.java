@@ -0,0 +1,25 @@
+package com.example.model;
+
+import org.springframework.ai.document.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A document found by a vector search, {@code score} is the cosine similarity to the query.
+ */
+public record RetrievedDocument(String id, String collection, String content, Map<String, Object> metadata,
+                                double score) {
+
+    public Document toDocument() {
+
+        Map<String, Object> documentMetadata = new HashMap<>(metadata);
+        documentMetadata.put("collection", collection);
+        return Document.builder()
+                .id(id)
+                .text(content)
+                .metadata(documentMetadata)
+                .score(score)
+                .build();
+    }
+}
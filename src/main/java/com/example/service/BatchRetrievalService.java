@@ -0,0 +1,55 @@
+package com.example.service;
+
+import com.example.metrics.AiMetrics;
+import com.example.model.BatchSearchResult;
+import com.example.model.RetrievedDocument;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retrieval for many questions at once, for evaluation runs and cache warming: the questions are embedded
+ * in one request and searched in one statement instead of one round trip each.
+ */
+@Service
+public class BatchRetrievalService {
+
+    private final EmbeddingModel embeddingModel;
+    private final VectorSearchRepository vectorSearchRepository;
+    private final RetrievalService retrievalService;
+    private final AiMetrics aiMetrics;
+
+    public BatchRetrievalService(EmbeddingModel embeddingModel,
+                                 VectorSearchRepository vectorSearchRepository,
+                                 RetrievalService retrievalService,
+                                 AiMetrics aiMetrics) {
+
+        this.embeddingModel = embeddingModel;
+        this.vectorSearchRepository = vectorSearchRepository;
+        this.retrievalService = retrievalService;
+        this.aiMetrics = aiMetrics;
+    }
+
+    /**
+     * @param collection the collection to search, all of them when {@code null}
+     */
+    public List<BatchSearchResult> search(List<String> queries, int topK, String collection) {
+
+        if (queries.isEmpty()) {
+            return List.of();
+        }
+
+        List<float[]> embeddings = embeddingModel.embed(queries);
+        List<String> collections = retrievalService.collections(collection);
+        List<List<RetrievedDocument>> documents = aiMetrics.time(AiMetrics.Stage.VECTOR_SEARCH, AiMetrics.NO_MODEL,
+                () -> vectorSearchRepository.searchBatch(embeddings, topK, collections));
+
+        List<BatchSearchResult> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            results.add(new BatchSearchResult(queries.get(i), documents.get(i)));
+        }
+        return results;
+    }
+}
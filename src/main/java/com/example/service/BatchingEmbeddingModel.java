@@ -0,0 +1,213 @@
+package com.example.service;
+
+import com.example.metrics.AiMetrics;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Embeds single query texts in micro-batches. Texts passed to {@link #embed(String)}, which is what vector
+ * store searches use, are collected for up to {@code ai.embedding.batch.max-wait} or until
+ * {@code ai.embedding.batch.max-size} texts are waiting, and sent as one embeddings request. Identical texts
+ * in a batch are embedded once. Everything else, every text once the application is shutting down and texts
+ * arriving while {@code ai.embedding.batch.queue-capacity} are already waiting go straight to the OpenAI
+ * model. A caller waits at most {@code ai.embedding.batch.timeout} for its vector.
+ * <p>
+ * The batched request shows up as an {@code embed} stage of the {@code background} endpoint, each caller
+ * records its wait for the vector as its own {@code embed} stage.
+ */
+@Primary
+@Component
+public class BatchingEmbeddingModel implements EmbeddingModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingEmbeddingModel.class);
+
+    private final OpenAiEmbeddingModel delegate;
+    private final AiMetrics aiMetrics;
+    private final DistributionSummary batchSize;
+    private final String model;
+    private final boolean enabled;
+    private final int maxSize;
+    private final long maxWaitNanos;
+    private final Duration timeout;
+    private final BlockingQueue<Pending> queue;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread collector;
+    private volatile boolean shuttingDown;
+
+    public BatchingEmbeddingModel(OpenAiEmbeddingModel delegate,
+                                  AiMetrics aiMetrics,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${spring.ai.openai.embedding.options.model:text-embedding-ada-002}") String model,
+                                  @Value("${ai.embedding.batch.enabled:true}") boolean enabled,
+                                  @Value("${ai.embedding.batch.max-size:64}") int maxSize,
+                                  @Value("${ai.embedding.batch.max-wait:5ms}") Duration maxWait,
+                                  @Value("${ai.embedding.batch.timeout:30s}") Duration timeout,
+                                  @Value("${ai.embedding.batch.queue-capacity:1000}") int queueCapacity) {
+
+        this.delegate = delegate;
+        this.aiMetrics = aiMetrics;
+        this.model = model;
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.timeout = timeout;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.batchSize = DistributionSummary.builder("ai.embedding.batch.size")
+                .description("Distinct texts per batched embeddings request")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+
+        this.collector = Thread.ofPlatform().daemon().name("embedding-batcher").unstarted(this::collect);
+        if (enabled) {
+            collector.start();
+        }
+    }
+
+    @Override
+    public float[] embed(String text) {
+
+        if (!enabled || shuttingDown) {
+            return delegate.embed(text);
+        }
+
+        Pending pending = new Pending(text, new CompletableFuture<>());
+        if (!queue.offer(pending)) {
+            // The batcher has fallen behind, waiting for it would only add to the latency
+            logger.debug("Embedding batch queue full, embedding directly");
+            return delegate.embed(text);
+        }
+        if (shuttingDown && queue.remove(pending)) {
+            // Queued after the collector stopped, nothing will pick it up
+            return delegate.embed(text);
+        }
+        return aiMetrics.time(AiMetrics.Stage.EMBED, model, () -> {
+            try {
+                return pending.vector().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+            } catch (TimeoutException e) {
+                queue.remove(pending);
+                throw new IllegalStateException("No embedding within " + timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for an embedding", e);
+            }
+        });
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+
+        return delegate.dimensions();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        shuttingDown = true;
+        collector.interrupt();
+        executor.shutdownNow();
+    }
+
+    private void collect() {
+
+        List<Pending> batch = new ArrayList<>(maxSize);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // Several batches may be in flight, admission control limits the concurrency of the requests
+                List<Pending> ready = batch;
+                executor.execute(() -> send(ready));
+                batch = new ArrayList<>(maxSize);
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // Shutting down, fail the batch being collected and everything still queued so no caller hangs
+            IllegalStateException error = new IllegalStateException("Embedding batcher is shut down");
+            queue.drainTo(batch);
+            batch.forEach(pending -> pending.vector().completeExceptionally(error));
+        }
+    }
+
+    private void send(List<Pending> batch) {
+
+        Map<String, List<CompletableFuture<float[]>>> byText = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            byText.computeIfAbsent(pending.text(), text -> new ArrayList<>(1)).add(pending.vector());
+        }
+        List<String> texts = new ArrayList<>(byText.keySet());
+        batchSize.record(texts.size());
+
+        try {
+            EmbeddingResponse response = delegate.call(
+                    new EmbeddingRequest(texts, EmbeddingOptionsBuilder.builder().build()));
+            float[][] vectors = new float[texts.size()][];
+            for (Embedding embedding : response.getResults()) {
+                vectors[embedding.getIndex()] = embedding.getOutput();
+            }
+            for (int i = 0; i < texts.size(); i++) {
+                float[] vector = vectors[i];
+                for (CompletableFuture<float[]> future : byText.get(texts.get(i))) {
+                    if (vector != null) {
+                        future.complete(vector);
+                    } else {
+                        future.completeExceptionally(new IllegalStateException("No embedding returned for text " + i));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.debug("Batched embeddings request for {} texts failed: {}", texts.size(), e.getMessage());
+            batch.forEach(pending -> pending.vector().completeExceptionally(e));
+        }
+    }
+
+    private record Pending(String text, CompletableFuture<float[]> vector) {
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Checks job callback URLs before the server posts to them. Only https URLs on a host listed in
+ * {@code jobs.callback.allowed-hosts} are accepted, a {@code *.} prefix allows every subdomain, and the host
+ * must not resolve to a loopback, link-local, private or otherwise internal address. Without allowed hosts
+ * no callbacks are accepted.
+ */
+@Component
+public class CallbackUrlValidator {
+
+    private final List<String> allowedHosts;
+
+    public CallbackUrlValidator(@Value("${jobs.callback.allowed-hosts:}") List<String> allowedHosts) {
+
+        this.allowedHosts = allowedHosts.stream()
+                .map(String::strip)
+                .filter(host -> !host.isEmpty())
+                .map(host -> host.toLowerCase(Locale.ROOT))
+                .toList();
+    }
+
+    /**
+     * @throws IllegalArgumentException if callbacks to the URL are not allowed
+     */
+    public void validate(String callbackUrl) {
+
+        URI uri;
+        try {
+            uri = new URI(callbackUrl);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("callbackUrl is not a valid URL");
+        }
+        if (!"https".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null || uri.getUserInfo() != null) {
+            throw new IllegalArgumentException("callbackUrl must be an https URL with a host");
+        }
+
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (!isAllowedHost(host)) {
+            throw new IllegalArgumentException("callbackUrl host " + host + " is not allowed");
+        }
+
+        InetAddress[] addresses;
+        try {
+            addresses = InetAddress.getAllByName(host);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("callbackUrl host " + host + " cannot be resolved");
+        }
+        for (InetAddress address : addresses) {
+            if (isInternal(address)) {
+                throw new IllegalArgumentException("callbackUrl host " + host + " resolves to an internal address");
+            }
+        }
+    }
+
+    private boolean isAllowedHost(String host) {
+
+        for (String allowed : allowedHosts) {
+            if (allowed.startsWith("*.") ? host.endsWith(allowed.substring(1)) : host.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInternal(InetAddress address) {
+
+        if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress() || address.isMulticastAddress()) {
+            return true;
+        }
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 4) {
+            // 100.64.0.0/10 carrier-grade NAT, 0.0.0.0/8
+            return (bytes[0] & 0xff) == 100 && (bytes[1] & 0xc0) == 64 || bytes[0] == 0;
+        }
+        // fc00::/7 unique local, and IPv4-mapped or compatible forms of internal IPv4 addresses
+        if ((bytes[0] & 0xfe) == 0xfc) {
+            return true;
+        }
+        boolean mapped = true;
+        for (int i = 0; i < 10; i++) {
+            mapped &= bytes[i] == 0;
+        }
+        if (mapped && (bytes[10] == 0 && bytes[11] == 0 || bytes[10] == (byte) 0xff && bytes[11] == (byte) 0xff)) {
+            try {
+                return isInternal(InetAddress.getByAddress(new byte[]{bytes[12], bytes[13], bytes[14], bytes[15]}));
+            } catch (UnknownHostException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.service;
+
+import com.example.constant.PromptConstant;
+import com.example.model.ConversationTurn;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Server-side conversation history. Every turn is stored in Postgres, active conversations are also kept in
+ * memory and dropped again after {@code conversation.idle-timeout}.
+ * <p>
+ * The history handed to the model is a rolling summary of older turns followed by the most recent turns
+ * that fit {@code conversation.history.max-tokens}, so the prompt stops growing with the conversation. Once
+ * the unsummarised turns exceed {@code conversation.summary.trigger-tokens} the oldest of them are folded
+ * into the summary by the small model in the background.
+ */
+@Service
+public class ConversationMemory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationMemory.class);
+    private static final Pattern CONVERSATION_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final String SUMMARY_PREFIX = "Summary of the conversation so far:\n";
+
+    private final ConversationRepository repository;
+    private final ChatClient chatClient;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final String summaryModel;
+    private final int maxHistoryTokens;
+    private final int summaryTriggerTokens;
+    private final int summaryMaxWords;
+    private final int maxLoadedTurns;
+    private final Duration idleTimeout;
+    private final int maxSessions;
+    private final Duration retention;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public ConversationMemory(ConversationRepository repository,
+                              ChatClient.Builder builder,
+                              @Value("${ai.routing.small-model:gpt-4o-mini}") String summaryModel,
+                              @Value("${conversation.history.max-tokens:2000}") int maxHistoryTokens,
+                              @Value("${conversation.summary.trigger-tokens:3000}") int summaryTriggerTokens,
+                              @Value("${conversation.summary.max-words:200}") int summaryMaxWords,
+                              @Value("${conversation.history.max-loaded-turns:50}") int maxLoadedTurns,
+                              @Value("${conversation.idle-timeout:30m}") Duration idleTimeout,
+                              @Value("${conversation.hot.max-sessions:10000}") int maxSessions,
+                              @Value("${conversation.retention:30d}") Duration retention,
+                              @Value("${conversation.summary.threads:2}") int threads,
+                              @Value("${conversation.summary.queue-capacity:100}") int queueCapacity) {
+
+        this.repository = repository;
+        this.chatClient = builder.build();
+        this.summaryModel = summaryModel;
+        this.maxHistoryTokens = maxHistoryTokens;
+        this.summaryTriggerTokens = summaryTriggerTokens;
+        this.summaryMaxWords = summaryMaxWords;
+        this.maxLoadedTurns = maxLoadedTurns;
+        this.idleTimeout = idleTimeout;
+        this.maxSessions = maxSessions;
+        this.retention = retention;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // A summary that cannot be queued is skipped, the window alone keeps the prompt bounded until the next turn
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "conversation-summary-" + threadCount.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static boolean isValidId(String conversationId) {
+
+        return conversationId != null && CONVERSATION_ID.matcher(conversationId).matches();
+    }
+
+    public void add(String conversationId, List<Message> messages) {
+
+        Session session = session(conversationId);
+        for (Message message : messages) {
+            String text = message.getText() != null ? message.getText() : "";
+            long id = repository.append(conversationId, message.getMessageType().getValue(), text);
+            synchronized (session) {
+                session.append(new Turn(id, message, tokenCountEstimator.estimate(text)));
+            }
+        }
+        summarizeIfNeeded(conversationId, session);
+    }
+
+    /**
+     * Returns the summary, if any, and the most recent turns that fit the token budget. The turns start
+     * with a user message, an answer whose question fell out of the window is left out.
+     */
+    public List<Message> get(String conversationId) {
+
+        Session session = session(conversationId);
+        synchronized (session) {
+            List<Message> recent = new ArrayList<>();
+            int budget = maxHistoryTokens;
+            if (session.summary != null) {
+                budget -= tokenCountEstimator.estimate(session.summary);
+            }
+            Iterator<Turn> newestFirst = session.turns.descendingIterator();
+            while (newestFirst.hasNext()) {
+                Turn turn = newestFirst.next();
+                budget -= turn.tokens();
+                if (budget < 0 && !recent.isEmpty()) {
+                    break;
+                }
+                recent.add(turn.message());
+            }
+            while (!recent.isEmpty() && recent.getLast().getMessageType() == MessageType.ASSISTANT) {
+                recent.removeLast();
+            }
+
+            List<Message> history = new ArrayList<>(recent.size() + 1);
+            if (session.summary != null) {
+                history.add(new SystemMessage(SUMMARY_PREFIX + session.summary));
+            }
+            history.addAll(recent.reversed());
+            return history;
+        }
+    }
+
+    /**
+     * Forgets a conversation, in memory and in the database.
+     */
+    public void clear(String conversationId) {
+
+        sessions.remove(conversationId);
+        repository.delete(conversationId);
+    }
+
+    /**
+     * Drops conversations idle for longer than the idle timeout from memory, and the least recently used
+     * ones while more than {@code conversation.hot.max-sessions} are held. They are reloaded on their next turn.
+     */
+    @Scheduled(fixedDelayString = "${conversation.eviction-interval:1m}")
+    public void evictIdleSessions() {
+
+        long idleBefore = System.nanoTime() - idleTimeout.toNanos();
+        sessions.values().removeIf(session -> session.lastAccess - idleBefore < 0);
+
+        int excess = sessions.size() - maxSessions;
+        if (excess > 0) {
+            sessions.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(sessions::remove);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${conversation.retention-check-interval:1h}")
+    public void deleteExpiredConversations() {
+
+        int deleted = repository.deleteIdle(retention);
+        if (deleted > 0) {
+            logger.info("Deleted {} conversations idle for more than {}", deleted, retention);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        executor.shutdown();
+    }
+
+    private Session session(String conversationId) {
+
+        if (!isValidId(conversationId)) {
+            throw new IllegalArgumentException("Invalid conversation id: " + conversationId);
+        }
+        // Load outside the map, computeIfAbsent would hold the bin lock for the duration of the query
+        Session session = sessions.get(conversationId);
+        if (session == null) {
+            Session loaded = load(conversationId);
+            session = sessions.putIfAbsent(conversationId, loaded);
+            if (session == null) {
+                session = loaded;
+            }
+        }
+        session.lastAccess = System.nanoTime();
+        return session;
+    }
+
+    private Session load(String conversationId) {
+
+        Session session = new Session();
+        repository.find(conversationId, maxLoadedTurns).ifPresent(state -> {
+            session.summary = state.summary();
+            for (ConversationTurn turn : state.turns()) {
+                session.append(new Turn(turn.id(), toMessage(turn), tokenCountEstimator.estimate(turn.content())));
+            }
+        });
+        return session;
+    }
+
+    private void summarizeIfNeeded(String conversationId, Session session) {
+
+        List<Turn> batch = new ArrayList<>();
+        String previousSummary;
+        synchronized (session) {
+            if (session.summarizing || session.tokens <= summaryTriggerTokens) {
+                return;
+            }
+            // Fold the oldest turns in, keep what the window would show anyway
+            int remaining = session.tokens;
+            for (Turn turn : session.turns) {
+                if (remaining <= maxHistoryTokens / 2) {
+                    break;
+                }
+                batch.add(turn);
+                remaining -= turn.tokens();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            previousSummary = session.summary;
+            session.summarizing = true;
+        }
+
+        try {
+            executor.execute(() -> summarize(conversationId, session, previousSummary, batch));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Summary queue full, skipping summary of conversation {}", conversationId);
+            synchronized (session) {
+                session.summarizing = false;
+            }
+        }
+    }
+
+    private void summarize(String conversationId, Session session, String previousSummary, List<Turn> batch) {
+
+        try {
+            String turns = batch.stream()
+                    .map(turn -> turn.message().getMessageType().getValue() + ": " + turn.message().getText())
+                    .collect(Collectors.joining("\n"));
+            String prompt = new PromptTemplate(PromptConstant.CONVERSATION_SUMMARY_PROMPT).render(Map.of(
+                    "summary", previousSummary != null ? previousSummary : "(none)",
+                    "turns", turns,
+                    "maxWords", summaryMaxWords));
+            String summary = chatClient.prompt(prompt)
+                    .options(OpenAiChatOptions.builder().model(summaryModel).build())
+                    .call()
+                    .content();
+            if (summary == null || summary.isBlank()) {
+                return;
+            }
+
+            long summarizedUntil = batch.getLast().id();
+            repository.saveSummary(conversationId, summary.strip(), summarizedUntil);
+            synchronized (session) {
+                session.summary = summary.strip();
+                while (!session.turns.isEmpty() && session.turns.peekFirst().id() <= summarizedUntil) {
+                    session.tokens -= session.turns.removeFirst().tokens();
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Summarising conversation {} failed: {}", conversationId, e.getMessage());
+        } finally {
+            synchronized (session) {
+                session.summarizing = false;
+            }
+        }
+    }
+
+    private static Message toMessage(ConversationTurn turn) {
+
+        return switch (MessageType.fromValue(turn.role())) {
+            case USER -> new UserMessage(turn.content());
+            case ASSISTANT -> new AssistantMessage(turn.content());
+            default -> new SystemMessage(turn.content());
+        };
+    }
+
+    private record Turn(long id, Message message, int tokens) {
+    }
+
+    private final class Session {
+
+        private final Deque<Turn> turns = new ArrayDeque<>();
+        private String summary;
+        private int tokens;
+        private boolean summarizing;
+        private volatile long lastAccess = System.nanoTime();
+
+        /**
+         * Adds a turn, dropping the oldest unsummarised ones if summaries fall so far behind that the turns
+         * held exceed twice the summary trigger.
+         */
+        private void append(Turn turn) {
+
+            turns.addLast(turn);
+            tokens += turn.tokens();
+            while (tokens > 2 * summaryTriggerTokens && turns.size() > 1) {
+                tokens -= turns.removeFirst().tokens();
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.service;
+
+import com.example.model.ConversationState;
+import com.example.model.ConversationTurn;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+@Repository
+public class ConversationRepository {
+
+    private final JdbcClient jdbcClient;
+
+    public ConversationRepository(JdbcClient jdbcClient) {
+
+        this.jdbcClient = jdbcClient;
+    }
+
+    /**
+     * Loads the summary and at most {@code maxTurns} of the most recent turns that it does not cover yet.
+     */
+    public Optional<ConversationState> find(String id, int maxTurns) {
+
+        return jdbcClient.sql("SELECT summary, summarized_until FROM conversation WHERE id = :id")
+                .param("id", id)
+                .query((rs, rowNum) -> {
+                    long summarizedUntil = rs.getLong("summarized_until");
+                    return new ConversationState(rs.getString("summary"), summarizedUntil,
+                            findTurns(id, summarizedUntil, maxTurns));
+                })
+                .optional();
+    }
+
+    public long append(String conversationId, String role, String content) {
+
+        jdbcClient.sql("""
+                        INSERT INTO conversation (id) VALUES (:id)
+                        ON CONFLICT (id) DO UPDATE SET updated_at = now()
+                        """)
+                .param("id", conversationId)
+                .update();
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcClient.sql("""
+                        INSERT INTO conversation_message (conversation_id, role, content)
+                        VALUES (:conversationId, :role, :content)
+                        """)
+                .param("conversationId", conversationId)
+                .param("role", role)
+                .param("content", content)
+                .update(keyHolder, "id");
+        return Objects.requireNonNull(keyHolder.getKey()).longValue();
+    }
+
+    public void saveSummary(String id, String summary, long summarizedUntil) {
+
+        jdbcClient.sql("""
+                        UPDATE conversation SET summary = :summary, summarized_until = :summarizedUntil
+                        WHERE id = :id AND summarized_until < :summarizedUntil
+                        """)
+                .param("id", id)
+                .param("summary", summary)
+                .param("summarizedUntil", summarizedUntil)
+                .update();
+    }
+
+    public void delete(String id) {
+
+        jdbcClient.sql("DELETE FROM conversation WHERE id = :id")
+                .param("id", id)
+                .update();
+    }
+
+    public int deleteIdle(Duration retention) {
+
+        return jdbcClient.sql("DELETE FROM conversation WHERE updated_at < now() - make_interval(secs => :seconds)")
+                .param("seconds", retention.toSeconds())
+                .update();
+    }
+
+    private List<ConversationTurn> findTurns(String id, long after, int maxTurns) {
+
+        List<ConversationTurn> turns = new ArrayList<>(jdbcClient.sql("""
+                        SELECT id, role, content FROM conversation_message
+                        WHERE conversation_id = :id AND id > :after
+                        ORDER BY id DESC
+                        LIMIT :limit
+                        """)
+                .param("id", id)
+                .param("after", after)
+                .param("limit", maxTurns)
+                .query((rs, rowNum) -> new ConversationTurn(rs.getLong("id"), rs.getString("role"),
+                        rs.getString("content")))
+                .list());
+        return turns.reversed();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store for generated images on the local disk. Every image is saved under the
+ * SHA-256 of the prompt and generation options that produced it, so the same request maps to the same file.
+ */
+@Service
+public class GeneratedImageStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeneratedImageStore.class);
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path directory;
+
+    public GeneratedImageStore(@Value("${image.store.directory:generated-images}") Path directory) throws IOException {
+
+        this.directory = Files.createDirectories(directory.toAbsolutePath());
+        logger.info("Storing generated images in {}", this.directory);
+    }
+
+    public static String key(String prompt, String options) {
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(options.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.strip().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static boolean isValidKey(String key) {
+
+        return key != null && KEY_PATTERN.matcher(key).matches();
+    }
+
+    public boolean contains(String key) {
+
+        return isValidKey(key) && Files.exists(path(key));
+    }
+
+    public Optional<Resource> find(String key) {
+
+        if (!contains(key)) {
+            return Optional.empty();
+        }
+        return Optional.of(new FileSystemResource(path(key)));
+    }
+
+    public void save(String key, byte[] image) {
+
+        if (!isValidKey(key)) {
+            throw new IllegalArgumentException("Invalid image key: " + key);
+        }
+        try {
+            // Write next to the target and move, so readers never see a partially written file
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, image);
+            Files.move(temp, path(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to store generated image " + key, e);
+        }
+    }
+
+    private Path path(String key) {
+
+        return directory.resolve(key + ".png");
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.service;
+
+import com.example.model.BatchSearchResult;
+import com.example.model.RetrievedDocument;
+import com.example.util.CountMinSketch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the retrieved documents of the most frequent RAG questions ready, so that they skip embedding and
+ * vector search. Question frequencies are estimated with a count-min sketch. Questions seen at least
+ * {@code rag.warmer.min-count} times become candidates, and every {@code rag.warmer.refresh-interval} the
+ * top {@code rag.warmer.top-n} candidates are searched in one batch.
+ * <p>
+ * All warm entries are searched again when {@code pg_stat_user_tables} shows that {@code vector_store} has
+ * changed. Counts are halved every {@code rag.warmer.decay-interval}, so questions that have gone cold drop out.
+ */
+@Service
+public class HotQuestionWarmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotQuestionWarmer.class);
+
+    private final BatchRetrievalService batchRetrievalService;
+    private final JdbcClient jdbcClient;
+    private final boolean enabled;
+    private final int topN;
+    private final long minCount;
+    private final CountMinSketch sketch;
+    // Collection and normalised question -> the question as first asked, kept for a few times top-n keys
+    private final Map<String, Candidate> candidates = new ConcurrentHashMap<>();
+    private final Map<String, List<Document>> warm = new ConcurrentHashMap<>();
+    private String storeVersion;
+
+    public HotQuestionWarmer(BatchRetrievalService batchRetrievalService,
+                             JdbcClient jdbcClient,
+                             @Value("${rag.warmer.enabled:true}") boolean enabled,
+                             @Value("${rag.warmer.top-n:100}") int topN,
+                             @Value("${rag.warmer.min-count:3}") long minCount,
+                             @Value("${rag.warmer.sketch.depth:4}") int sketchDepth,
+                             @Value("${rag.warmer.sketch.width:16384}") int sketchWidth) {
+
+        this.batchRetrievalService = batchRetrievalService;
+        this.jdbcClient = jdbcClient;
+        this.enabled = enabled;
+        this.topN = topN;
+        this.minCount = minCount;
+        this.sketch = new CountMinSketch(sketchDepth, sketchWidth);
+    }
+
+    /**
+     * Counts the question and returns its warm documents, if it has any.
+     *
+     * @param collection the collection searched, {@code null} for all of them
+     */
+    public Optional<List<Document>> lookup(String question, String collection) {
+
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        String key = key(question, collection);
+        if (sketch.add(key) >= minCount) {
+            candidates.putIfAbsent(key, new Candidate(question, collection));
+            if (candidates.size() > 4 * topN) {
+                trimCandidates();
+            }
+        }
+        return Optional.ofNullable(warm.get(key));
+    }
+
+    @Scheduled(fixedDelayString = "${rag.warmer.refresh-interval:30s}")
+    public void refresh() {
+
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            String version = storeVersion();
+            boolean storeChanged = !Objects.equals(version, storeVersion);
+
+            Map<String, Candidate> hot = hottest();
+            warm.keySet().retainAll(hot.keySet());
+            Map<Optional<String>, List<String>> keysByCollection = hot.keySet().stream()
+                    .filter(key -> storeChanged || !warm.containsKey(key))
+                    .collect(Collectors.groupingBy(key -> Optional.ofNullable(hot.get(key).collection())));
+            keysByCollection.forEach((collection, keys) -> {
+                List<BatchSearchResult> results = batchRetrievalService.search(
+                        keys.stream().map(key -> hot.get(key).question()).toList(), RetrievalService.TOP_K,
+                        collection.orElse(null));
+                for (int i = 0; i < keys.size(); i++) {
+                    warm.put(keys.get(i), results.get(i).documents().stream()
+                            .map(RetrievedDocument::toDocument)
+                            .toList());
+                }
+            });
+            if (!keysByCollection.isEmpty()) {
+                logger.debug("Warmed {} questions, {} warm in total{}",
+                        keysByCollection.values().stream().mapToInt(List::size).sum(), warm.size(),
+                        storeChanged ? " after a vector store change" : "");
+            }
+            storeVersion = version;
+        } catch (RuntimeException e) {
+            logger.warn("Refreshing hot questions failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rag.warmer.decay-interval:1h}", initialDelayString = "${rag.warmer.decay-interval:1h}")
+    public void decay() {
+
+        sketch.decay();
+        candidates.keySet().removeIf(key -> sketch.estimate(key) < minCount);
+    }
+
+    private Map<String, Candidate> hottest() {
+
+        return candidates.keySet().stream()
+                .map(key -> Map.entry(key, sketch.estimate(key)))
+                .filter(entry -> entry.getValue() >= minCount)
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(topN)
+                .map(Map.Entry::getKey)
+                .filter(candidates::containsKey)
+                .collect(Collectors.toMap(key -> key, candidates::get));
+    }
+
+    private synchronized void trimCandidates() {
+
+        if (candidates.size() <= 4 * topN) {
+            return;
+        }
+        Set<String> keep = candidates.keySet().stream()
+                .sorted(Comparator.comparingLong(sketch::estimate).reversed())
+                .limit(2L * topN)
+                .collect(Collectors.toSet());
+        candidates.keySet().retainAll(keep);
+    }
+
+    /**
+     * Changes whenever rows of a {@code vector_store} partition are inserted, updated or deleted, a partition
+     * is truncated or a collection is added.
+     * Read on the primary, a replica does not count the changes it replays.
+     */
+    private String storeVersion() {
+
+        List<String> versions = jdbcClient.sql("""
+                        SELECT string_agg(relid || ':' || pg_relation_filenode(relid) || ':'
+                                          || (n_tup_ins + n_tup_upd + n_tup_del), ',' ORDER BY relid)
+                        FROM pg_stat_user_tables
+                        WHERE relid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = to_regclass('vector_store'))
+                        """)
+                .query(String.class)
+                .list();
+        return versions.isEmpty() ? null : versions.getFirst();
+    }
+
+    private static String key(String question, String collection) {
+
+        String normalized = question.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return (collection != null ? collection : "") + '\n' + normalized;
+    }
+
+    private record Candidate(String question, String collection) {
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.service;
+
+import com.example.util.BkTree;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Descriptions of previously seen images, indexed by perceptual hash. The index lives in memory as a
+ * BK-tree and is rebuilt from the {@code image_description} table on startup.
+ * <p>
+ * The table keeps at most {@code image.description-cache.max-entries} descriptions, the oldest go first, and
+ * none older than {@code image.description-cache.retention}. The index is rebuilt after rows are deleted.
+ */
+@Service
+public class ImageDescriptionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageDescriptionCache.class);
+
+    private final JdbcClient jdbcClient;
+    private final boolean enabled;
+    private final int maxDistance;
+    private final int maxEntries;
+    private final Duration retention;
+    private volatile BkTree<String> index = new BkTree<>();
+
+    public ImageDescriptionCache(JdbcClient jdbcClient,
+                                 @Value("${image.description-cache.enabled:true}") boolean enabled,
+                                 @Value("${image.description-cache.max-distance:6}") int maxDistance,
+                                 @Value("${image.description-cache.max-entries:100000}") int maxEntries,
+                                 @Value("${image.description-cache.retention:90d}") Duration retention) {
+
+        this.jdbcClient = jdbcClient;
+        this.enabled = enabled;
+        this.maxDistance = maxDistance;
+        this.maxEntries = maxEntries;
+        this.retention = retention;
+    }
+
+    @PostConstruct
+    public void init() {
+
+        if (!enabled) {
+            return;
+        }
+
+        index = load();
+        logger.info("Loaded {} image descriptions into the perceptual hash index", index.size());
+    }
+
+    public Optional<String> find(long hash) {
+
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        return index.nearest(hash, maxDistance)
+                .map(match -> {
+                    logger.debug("Image hash {} matched {} at distance {}",
+                            Long.toHexString(hash), Long.toHexString(match.key()), match.distance());
+                    return match.value();
+                });
+    }
+
+    public void put(long hash, String description) {
+
+        if (!enabled || description == null) {
+            return;
+        }
+
+        jdbcClient.sql("INSERT INTO image_description (phash, description) VALUES (:phash, :description)")
+                .param("phash", hash)
+                .param("description", description)
+                .update();
+        index.add(hash, description);
+    }
+
+    /**
+     * Deletes descriptions past the retention and the oldest beyond the size cap, then rebuilds the index
+     * without them. A description stored while the index is rebuilt is only matched again after a restart
+     * or the next rebuild.
+     */
+    @Scheduled(fixedDelayString = "${image.description-cache.retention-check-interval:1h}")
+    public void deleteOldDescriptions() {
+
+        if (!enabled) {
+            return;
+        }
+
+        int expired = jdbcClient.sql(
+                        "DELETE FROM image_description WHERE created_at < now() - make_interval(secs => :seconds)")
+                .param("seconds", retention.toSeconds())
+                .update();
+        int evicted = jdbcClient.sql("""
+                        DELETE FROM image_description
+                        WHERE id <= (SELECT id FROM image_description ORDER BY id DESC OFFSET :maxEntries LIMIT 1)
+                        """)
+                .param("maxEntries", maxEntries)
+                .update();
+        if (expired + evicted > 0) {
+            index = load();
+            logger.info("Deleted {} image descriptions older than {} and {} beyond the {} kept, {} left",
+                    expired, retention, evicted, maxEntries, index.size());
+        }
+    }
+
+    private BkTree<String> load() {
+
+        BkTree<String> loaded = new BkTree<>();
+        jdbcClient.sql("SELECT phash, description FROM image_description ORDER BY id")
+                .query((RowCallbackHandler) rs -> loaded.add(rs.getLong("phash"), rs.getString("description")));
+        return loaded;
+    }
+}
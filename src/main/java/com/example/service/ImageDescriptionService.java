@@ -0,0 +1,74 @@
+package com.example.service;
+
+import com.example.metrics.AiMetrics;
+import com.example.model.ImageDescription;
+import com.example.model.PreprocessedImage;
+import com.example.util.PerceptualHash;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+
+import java.util.Optional;
+import java.util.OptionalLong;
+
+@Service
+public class ImageDescriptionService {
+
+    private final ChatClient chatClient;
+    private final ImagePreprocessor imagePreprocessor;
+    private final ImageDescriptionCache imageDescriptionCache;
+    private final AiMetrics aiMetrics;
+    private final ModelRouter modelRouter;
+
+    public ImageDescriptionService(ChatClient.Builder chatClientBuilder,
+                                   ImagePreprocessor imagePreprocessor,
+                                   ImageDescriptionCache imageDescriptionCache,
+                                   AiMetrics aiMetrics,
+                                   ModelRouter modelRouter) {
+
+        this.chatClient = chatClientBuilder.build();
+        this.imagePreprocessor = imagePreprocessor;
+        this.imageDescriptionCache = imageDescriptionCache;
+        this.aiMetrics = aiMetrics;
+        this.modelRouter = modelRouter;
+    }
+
+    public ImageDescription describe(byte[] image, MimeType mimeType, String filename) {
+
+        OptionalLong hash = PerceptualHash.dHash(image);
+        if (hash.isPresent()) {
+            Optional<String> cached = imageDescriptionCache.find(hash.getAsLong());
+            aiMetrics.cacheLookup("image-description", cached.isPresent());
+            if (cached.isPresent()) {
+                return new ImageDescription(cached.get(), true, 0, 0);
+            }
+        }
+
+        PreprocessedImage preprocessed = aiMetrics.time(AiMetrics.Stage.PREPROCESS,
+                () -> imagePreprocessor.preprocess(image, mimeType));
+
+        ByteArrayResource imageResource = new ByteArrayResource(preprocessed.data()) {
+            @Override
+            public String getFilename() {
+
+                return filename;
+            }
+        };
+
+        ModelRouter.Route route = modelRouter.route(ModelRouter.Task.VISION, null, null);
+        String description = modelRouter.call(route, ModelRouter.Task.VISION, options -> chatClient
+                .prompt()
+                .user(useSpec ->
+                        useSpec.text("Explain what you see in the image")
+                                .media(preprocessed.mimeType(), imageResource))
+                .options(options)
+                .call()
+                .content());
+
+        if (hash.isPresent()) {
+            imageDescriptionCache.put(hash.getAsLong(), description);
+        }
+        return new ImageDescription(description, false, preprocessed.bytesSaved(), preprocessed.tokensSaved());
+    }
+}
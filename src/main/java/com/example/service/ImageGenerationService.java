@@ -0,0 +1,136 @@
+package com.example.service;
+
+import com.example.metrics.AiMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.image.Image;
+import org.springframework.ai.image.ImageModel;
+import org.springframework.ai.image.ImagePrompt;
+import org.springframework.ai.image.ImageResponse;
+import org.springframework.ai.openai.OpenAiImageOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates images once per prompt and options and keeps them in the {@link GeneratedImageStore}.
+ * Concurrent requests for the same prompt wait for a single generation instead of starting their own.
+ */
+@Service
+public class ImageGenerationService {
+
+    public static final String GENERATED_IMAGE_PATH = "/api/v1/image/generated/";
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageGenerationService.class);
+    private static final int WIDTH = 1024;
+    private static final int HEIGHT = 1024;
+    private static final String QUALITY = "hd";
+
+    private final ImageModel imageModel;
+    private final GeneratedImageStore generatedImageStore;
+    private final RestClient downloadClient;
+    private final AiMetrics aiMetrics;
+    private final String optionsSignature;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    public ImageGenerationService(ImageModel imageModel,
+                                  GeneratedImageStore generatedImageStore,
+                                  AiMetrics aiMetrics,
+                                  @Value("${spring.ai.openai.image.options.model:dall-e-3}") String model,
+                                  @Value("${ai.http.read-timeout.default:60s}") Duration downloadTimeout) {
+
+        this.imageModel = imageModel;
+        this.generatedImageStore = generatedImageStore;
+        // The image host is not the OpenAI API, so the download skips the shared client and admission control
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build());
+        requestFactory.setReadTimeout(downloadTimeout);
+        this.downloadClient = RestClient.builder()
+                .requestFactory(requestFactory)
+                .build();
+        this.aiMetrics = aiMetrics;
+        this.optionsSignature = "model=%s;n=1;width=%d;height=%d;quality=%s".formatted(model, WIDTH, HEIGHT, QUALITY);
+    }
+
+    public static String path(String key) {
+
+        return GENERATED_IMAGE_PATH + key;
+    }
+
+    /**
+     * Returns the store key of the image for the prompt, generating it only when it is not stored yet.
+     */
+    public String generate(String prompt) {
+
+        String key = GeneratedImageStore.key(prompt, optionsSignature);
+        boolean stored = generatedImageStore.contains(key);
+        aiMetrics.cacheLookup("generated-image", stored);
+        if (stored) {
+            logger.debug("Reusing generated image {}", key);
+            return key;
+        }
+
+        CompletableFuture<String> generation = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, generation);
+        if (running != null) {
+            return await(running);
+        }
+
+        try {
+            if (!generatedImageStore.contains(key)) {
+                generatedImageStore.save(key, callModel(prompt));
+            }
+            generation.complete(key);
+            return key;
+        } catch (RuntimeException e) {
+            generation.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    private byte[] callModel(String prompt) {
+        //https://platform.openai.com/docs/api-reference/images/create
+        ImageResponse imageResponse = imageModel.call(
+                new ImagePrompt(prompt, OpenAiImageOptions.builder()
+                        .withN(1)
+                        .withWidth(WIDTH)
+                        .withHeight(HEIGHT)
+                        .withQuality(QUALITY)
+                        .withResponseFormat("b64_json")
+                        .build()));
+
+        Image image = imageResponse.getResult().getOutput();
+        if (image.getB64Json() != null) {
+            return Base64.getDecoder().decode(image.getB64Json());
+        }
+        // Providers that ignore the response format still return a short-lived URL
+        return downloadClient.get()
+                .uri(image.getUrl())
+                .retrieve()
+                .body(byte[].class);
+    }
+
+    private String await(CompletableFuture<String> running) {
+
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
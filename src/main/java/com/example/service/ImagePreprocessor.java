@@ -0,0 +1,321 @@
+package com.example.service;
+
+import com.example.admission.AdmissionRejectedException;
+import com.example.model.PreprocessedImage;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shrinks uploaded images before they are sent to the vision model. Images are downscaled to
+ * {@code image.preprocess.max-dimension} and re-encoded as JPEG, which also drops EXIF and other metadata, even
+ * when the result is slightly larger than the upload. Images declaring more than {@code image.preprocess.max-pixels}
+ * are rejected before they are decoded.
+ */
+@Service
+public class ImagePreprocessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImagePreprocessor.class);
+    private static final Duration REJECTED_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final int maxDimension;
+    private final long maxPixels;
+    private final float jpegQuality;
+    private final ThreadPoolExecutor executor;
+
+    public ImagePreprocessor(@Value("${image.preprocess.max-dimension:1024}") int maxDimension,
+                             @Value("${image.preprocess.max-pixels:40000000}") long maxPixels,
+                             @Value("${image.preprocess.jpeg-quality:0.85}") float jpegQuality,
+                             @Value("${image.preprocess.threads:2}") int threads,
+                             @Value("${image.preprocess.queue-capacity:32}") int queueCapacity) {
+
+        this.maxDimension = maxDimension;
+        this.maxPixels = maxPixels;
+        this.jpegQuality = jpegQuality;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // When the pool and its queue are full the request is shed rather than run on the request thread
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "image-preprocess-" + threadCount.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @throws AdmissionRejectedException if the preprocessing pool and its queue are full
+     * @throws IllegalArgumentException   if the image has more pixels than allowed
+     */
+    public PreprocessedImage preprocess(byte[] data, MimeType mimeType) {
+
+        try {
+            return executor.submit(() -> doPreprocess(data, mimeType)).get();
+        } catch (RejectedExecutionException e) {
+            throw new AdmissionRejectedException("image preprocessing", "queue full", REJECTED_RETRY_AFTER);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return unchanged(data, mimeType);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException tooLarge) {
+                throw tooLarge;
+            }
+            logger.warn("Image preprocessing failed, sending the original image: {}", e.getCause().getMessage());
+            return unchanged(data, mimeType);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        executor.shutdown();
+    }
+
+    /**
+     * Approximates the number of input tokens gpt-4o charges for an image in high detail: the image is
+     * fit into 2048x2048, its shortest side scaled to 768 and then counted in 512px tiles.
+     */
+    public static int estimateVisionTokens(int width, int height) {
+
+        double w = width;
+        double h = height;
+
+        double fit = Math.min(1.0, 2048.0 / Math.max(w, h));
+        w *= fit;
+        h *= fit;
+
+        double shortest = Math.min(1.0, 768.0 / Math.min(w, h));
+        w *= shortest;
+        h *= shortest;
+
+        int tiles = (int) (Math.ceil(w / 512) * Math.ceil(h / 512));
+        return 85 + 170 * tiles;
+    }
+
+    private PreprocessedImage doPreprocess(byte[] data, MimeType mimeType) throws IOException {
+
+        BufferedImage source = decode(data);
+        if (source == null) {
+            return unchanged(data, mimeType);
+        }
+        int originalTokens = estimateVisionTokens(source.getWidth(), source.getHeight());
+
+        BufferedImage oriented = applyExifOrientation(source, readExifOrientation(data));
+        BufferedImage scaled = scale(oriented);
+        // Sent even when it is larger than the upload, which may carry EXIF, GPS position and maker notes
+        byte[] encoded = encodeJpeg(scaled);
+
+        PreprocessedImage result = new PreprocessedImage(encoded, MimeTypeUtils.IMAGE_JPEG, data.length,
+                originalTokens, estimateVisionTokens(scaled.getWidth(), scaled.getHeight()));
+
+        logger.info("Preprocessed image {}x{} -> {}x{}, {} -> {} bytes, ~{} tokens saved",
+                source.getWidth(), source.getHeight(), scaled.getWidth(), scaled.getHeight(),
+                data.length, result.processedBytes(), result.tokensSaved());
+        return result;
+    }
+
+    /**
+     * Decodes an image after checking the dimensions in its header, so that a small file declaring a huge
+     * image cannot exhaust the heap. Returns {@code null} when no reader supports the data.
+     */
+    private BufferedImage decode(byte[] data) throws IOException {
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IllegalArgumentException("Image of " + width + "x" + height
+                            + " pixels exceeds the limit of " + maxPixels + " pixels");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private PreprocessedImage unchanged(byte[] data, MimeType mimeType) {
+
+        return new PreprocessedImage(data, mimeType, data.length, 0, 0);
+    }
+
+    private BufferedImage scale(BufferedImage image) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double ratio = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+        // JPEG has no alpha channel, so transparent areas are flattened onto white
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, targetWidth, targetHeight);
+            graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Phone cameras store rotation in EXIF instead of rotating the pixels. Since re-encoding drops EXIF,
+     * the rotation is applied to the pixels first.
+     */
+    private BufferedImage applyExifOrientation(BufferedImage image, int orientation) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        AffineTransform transform = new AffineTransform();
+        switch (orientation) {
+            case 3 -> transform.rotate(Math.PI, width / 2.0, height / 2.0);
+            case 6 -> {
+                transform.translate(height, 0);
+                transform.rotate(Math.PI / 2);
+            }
+            case 8 -> {
+                transform.translate(0, width);
+                transform.rotate(-Math.PI / 2);
+            }
+            default -> {
+                return image;
+            }
+        }
+
+        boolean swap = orientation == 6 || orientation == 8;
+        BufferedImage rotated = new BufferedImage(swap ? height : width, swap ? width : height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = rotated.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rotated;
+    }
+
+    /**
+     * Reads the EXIF orientation tag (0x0112) from the APP1 segment of a JPEG, or returns 1 when absent.
+     */
+    private static int readExifOrientation(byte[] data) {
+
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+            return 1;
+        }
+
+        int offset = 2;
+        while (offset + 4 <= data.length && (data[offset] & 0xFF) == 0xFF) {
+            int marker = data[offset + 1] & 0xFF;
+            int length = ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+            if (marker == 0xE1 && offset + 10 <= data.length
+                    && data[offset + 4] == 'E' && data[offset + 5] == 'x' && data[offset + 6] == 'i' && data[offset + 7] == 'f') {
+                return readOrientationFromTiff(data, offset + 10, Math.min(data.length, offset + 2 + length));
+            }
+            if (marker == 0xDA) {
+                break;
+            }
+            offset += 2 + length;
+        }
+        return 1;
+    }
+
+    private static int readOrientationFromTiff(byte[] data, int tiff, int end) {
+
+        if (tiff + 8 > end) {
+            return 1;
+        }
+        boolean littleEndian = data[tiff] == 'I';
+        // The offset is unsigned and must point past the 8-byte TIFF header, inside the segment
+        long ifdOffset = Integer.toUnsignedLong(readInt(data, tiff + 4, littleEndian));
+        if (ifdOffset < 8 || ifdOffset > end - tiff - 2) {
+            return 1;
+        }
+        int ifd = tiff + (int) ifdOffset;
+
+        int entries = readShort(data, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (readShort(data, entry, littleEndian) == 0x0112) {
+                return readShort(data, entry + 8, littleEndian);
+            }
+        }
+        return 1;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] data, int offset, boolean littleEndian) {
+
+        int high = readShort(data, littleEndian ? offset + 2 : offset, littleEndian);
+        int low = readShort(data, littleEndian ? offset : offset + 2, littleEndian);
+        return (high << 16) | low;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.service;
+
+import com.example.model.Job;
+import com.example.model.JobStatus;
+import com.example.model.JobType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public class JobRepository {
+
+    private static final String JOB_COLUMNS =
+            "id, type, status, priority, params, result, error, callback_url, created_at, updated_at";
+
+    private final JdbcClient jdbcClient;
+    private final ObjectMapper objectMapper;
+
+    public JobRepository(JdbcClient jdbcClient,
+                         ObjectMapper objectMapper) {
+
+        this.jdbcClient = jdbcClient;
+        this.objectMapper = objectMapper;
+    }
+
+    public void insert(Job job, byte[] payload) {
+
+        jdbcClient.sql("""
+                        INSERT INTO ai_job (id, type, status, priority, params, payload, callback_url)
+                        VALUES (:id, :type, :status, :priority, CAST(:params AS json), :payload, :callbackUrl)
+                        """)
+                .param("id", job.id())
+                .param("type", job.type().name())
+                .param("status", job.status().name())
+                .param("priority", job.priority())
+                .param("params", toJson(job.params()))
+                .param("payload", payload)
+                .param("callbackUrl", job.callbackUrl())
+                .update();
+    }
+
+    public Optional<Job> findById(UUID id) {
+
+        return jdbcClient.sql("SELECT " + JOB_COLUMNS + " FROM ai_job WHERE id = :id")
+                .param("id", id)
+                .query(this::mapJob)
+                .optional();
+    }
+
+    /**
+     * Jobs no instance is working on: all queued ones when {@code includeQueued}, otherwise only those queued
+     * for longer than the lease, plus running ones whose lease has expired.
+     */
+    public List<Job> findRecoverable(Duration lease, boolean includeQueued) {
+
+        return jdbcClient.sql("SELECT " + JOB_COLUMNS + " FROM ai_job WHERE " + """
+                        (status = 'QUEUED' AND (:includeQueued OR updated_at < now() - make_interval(secs => :seconds)))
+                        OR (status = 'RUNNING' AND updated_at < now() - make_interval(secs => :seconds))
+                        ORDER BY created_at
+                        """)
+                .param("includeQueued", includeQueued)
+                .param("seconds", lease.toSeconds())
+                .query(this::mapJob)
+                .list();
+    }
+
+    public byte[] findPayload(UUID id) {
+
+        return jdbcClient.sql("SELECT payload FROM ai_job WHERE id = :id")
+                .param("id", id)
+                .query((rs, rowNum) -> rs.getBytes("payload"))
+                .single();
+    }
+
+    /**
+     * Marks a queued job, or one whose owner stopped renewing its lease, as running for {@code owner}.
+     *
+     * @return false if another instance holds the job or it has finished
+     */
+    public boolean claim(UUID id, UUID owner, Duration lease) {
+
+        return jdbcClient.sql("""
+                        UPDATE ai_job SET status = 'RUNNING', owner = :owner, updated_at = now()
+                        WHERE id = :id
+                          AND (status = 'QUEUED'
+                               OR (status = 'RUNNING' AND updated_at < now() - make_interval(secs => :seconds)))
+                        """)
+                .param("id", id)
+                .param("owner", owner)
+                .param("seconds", lease.toSeconds())
+                .update() == 1;
+    }
+
+    /**
+     * Extends the lease of every job {@code owner} is running.
+     */
+    public int renew(UUID owner) {
+
+        return jdbcClient.sql("UPDATE ai_job SET updated_at = now() WHERE status = 'RUNNING' AND owner = :owner")
+                .param("owner", owner)
+                .update();
+    }
+
+    /**
+     * Puts a claimed job back in the queue, for this or another instance to pick up.
+     */
+    public boolean release(UUID id, UUID owner) {
+
+        return jdbcClient.sql("""
+                        UPDATE ai_job SET status = 'QUEUED', owner = NULL, updated_at = now()
+                        WHERE id = :id AND status = 'RUNNING' AND owner = :owner
+                        """)
+                .param("id", id)
+                .param("owner", owner)
+                .update() == 1;
+    }
+
+    /**
+     * Stores the outcome of a finished job and drops its payload, which is no longer needed.
+     *
+     * @return false if the lease was lost and the job is now owned by another instance
+     */
+    public boolean complete(UUID id, UUID owner, JobStatus status, String result, String error) {
+
+        return jdbcClient.sql("""
+                        UPDATE ai_job
+                        SET status = :status, result = :result, error = :error, payload = NULL, updated_at = now()
+                        WHERE id = :id AND status = 'RUNNING' AND owner = :owner
+                        """)
+                .param("id", id)
+                .param("owner", owner)
+                .param("status", status.name())
+                .param("result", result)
+                .param("error", error)
+                .update() == 1;
+    }
+
+    public int deleteFinished(Duration retention) {
+
+        return jdbcClient.sql("""
+                        DELETE FROM ai_job
+                        WHERE status IN ('SUCCEEDED', 'FAILED') AND updated_at < now() - make_interval(secs => :seconds)
+                        """)
+                .param("seconds", retention.toSeconds())
+                .update();
+    }
+
+    private Job mapJob(ResultSet rs, int rowNum) throws SQLException {
+
+        return new Job(
+                rs.getObject("id", UUID.class),
+                JobType.valueOf(rs.getString("type")),
+                JobStatus.valueOf(rs.getString("status")),
+                rs.getInt("priority"),
+                fromJson(rs.getString("params")),
+                rs.getString("result"),
+                rs.getString("error"),
+                rs.getString("callback_url"),
+                rs.getObject("created_at", OffsetDateTime.class).toInstant(),
+                rs.getObject("updated_at", OffsetDateTime.class).toInstant());
+    }
+
+    private String toJson(Map<String, String> params) {
+
+        try {
+            return objectMapper.writeValueAsString(params);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unable to serialize job parameters", e);
+        }
+    }
+
+    private Map<String, String> fromJson(String params) {
+
+        if (params == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(params, new TypeReference<>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to read job parameters", e);
+        }
+    }
+}
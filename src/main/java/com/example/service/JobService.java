@@ -0,0 +1,387 @@
+package com.example.service;
+
+import com.example.admission.AdmissionRejectedException;
+import com.example.model.Job;
+import com.example.model.JobStatus;
+import com.example.model.JobType;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs long audio and image work in the background. Jobs are persisted in the {@code ai_job} table,
+ * executed on a bounded pool ordered by priority and reported by polling, SSE or webhook.
+ */
+@Service
+public class JobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobService.class);
+
+    private final JobRepository jobRepository;
+    private final TranscriptionService transcriptionService;
+    private final ImageGenerationService imageGenerationService;
+    private final CallbackUrlValidator callbackUrlValidator;
+    private final RestClient webhookClient;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final Duration sseTimeout;
+    private final Duration lease;
+    private final Duration retention;
+    // Identifies the jobs this instance has claimed, so several instances can share the table
+    private final UUID owner = UUID.randomUUID();
+    private final AtomicLong sequence = new AtomicLong();
+    // Jobs waiting in the executor queue, reserved before submission so that concurrent submits cannot overshoot
+    private final AtomicInteger queued = new AtomicInteger();
+    // Jobs in the executor queue, so that recovery does not queue them twice
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    public JobService(JobRepository jobRepository,
+                      TranscriptionService transcriptionService,
+                      ImageGenerationService imageGenerationService,
+                      CallbackUrlValidator callbackUrlValidator,
+                      @Value("${jobs.executor.threads:4}") int threads,
+                      @Value("${jobs.queue.capacity:100}") int queueCapacity,
+                      @Value("${jobs.sse.timeout:10m}") Duration sseTimeout,
+                      @Value("${jobs.callback.timeout:10s}") Duration callbackTimeout,
+                      @Value("${jobs.lease:5m}") Duration lease,
+                      @Value("${jobs.retention:7d}") Duration retention) {
+
+        this.jobRepository = jobRepository;
+        this.transcriptionService = transcriptionService;
+        this.imageGenerationService = imageGenerationService;
+        this.callbackUrlValidator = callbackUrlValidator;
+        // The JDK client does not follow redirects, so a callback cannot be bounced to an unchecked address.
+        // Not built from the shared builder, webhooks are no model calls and must not pass admission control.
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory();
+        requestFactory.setReadTimeout(callbackTimeout);
+        this.webhookClient = RestClient.builder()
+                .requestFactory(requestFactory)
+                .build();
+        this.queueCapacity = queueCapacity;
+        this.sseTimeout = sseTimeout;
+        this.lease = lease;
+        this.retention = retention;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                runnable -> new Thread(runnable, "ai-job-" + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the callback URL is not allowed
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public Job submit(JobType type, int priority, Map<String, String> params, byte[] payload, String callbackUrl) {
+
+        if (callbackUrl != null && !callbackUrl.isBlank()) {
+            callbackUrlValidator.validate(callbackUrl);
+        }
+        int waiting;
+        do {
+            waiting = queued.get();
+            if (waiting >= queueCapacity) {
+                throw new RejectedExecutionException("Job queue is full, try again later");
+            }
+        } while (!queued.compareAndSet(waiting, waiting + 1));
+
+        Instant now = Instant.now();
+        Job job = new Job(UUID.randomUUID(), type, JobStatus.QUEUED, priority, params,
+                null, null, callbackUrl, now, now);
+        try {
+            jobRepository.insert(job, payload);
+        } catch (RuntimeException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+        pending.add(job.id());
+        execute(job);
+
+        logger.debug("Submitted {} job {} with priority {}", type, job.id(), priority);
+        return job;
+    }
+
+    public Optional<Job> find(UUID id) {
+
+        return jobRepository.findById(id);
+    }
+
+    public Optional<SseEmitter> subscribe(UUID id) {
+
+        // Registered before the job is read, so a terminal update published in between is not missed
+        SseEmitter emitter = new SseEmitter(sseTimeout.toMillis());
+        subscribers.compute(id, (key, emitters) -> {
+            List<SseEmitter> registered = emitters != null ? emitters : new CopyOnWriteArrayList<>();
+            registered.add(emitter);
+            return registered;
+        });
+        emitter.onCompletion(() -> unsubscribe(id, emitter));
+        emitter.onTimeout(() -> unsubscribe(id, emitter));
+
+        Optional<Job> job = jobRepository.findById(id);
+        if (job.isEmpty()) {
+            unsubscribe(id, emitter);
+            return Optional.empty();
+        }
+        send(emitter, job.get());
+        if (job.get().status().isTerminal()) {
+            unsubscribe(id, emitter);
+            emitter.complete();
+        }
+        return Optional.of(emitter);
+    }
+
+    /**
+     * Re-queues work that was waiting when the application last stopped, or that an instance stopped working on.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverJobs() {
+
+        recover(true);
+    }
+
+    /**
+     * Picks up jobs left behind by another instance that stopped renewing its leases.
+     */
+    @Scheduled(initialDelayString = "${jobs.recovery-interval:1m}", fixedDelayString = "${jobs.recovery-interval:1m}")
+    public void recoverAbandonedJobs() {
+
+        recover(false);
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.lease-renewal-interval:1m}")
+    public void renewLeases() {
+
+        jobRepository.renew(owner);
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.retention-check-interval:1h}")
+    public void deleteFinishedJobs() {
+
+        int deleted = jobRepository.deleteFinished(retention);
+        if (deleted > 0) {
+            logger.info("Deleted {} jobs finished more than {} ago", deleted, retention);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        executor.shutdownNow();
+    }
+
+    private void recover(boolean includeQueued) {
+
+        List<Job> recoverable = jobRepository.findRecoverable(lease, includeQueued);
+        if (!recoverable.isEmpty()) {
+            logger.info("Recovering {} unfinished jobs", recoverable.size());
+        }
+        recoverable.forEach(this::enqueue);
+    }
+
+    /**
+     * Queues a recovered or deferred job. These are not held to the queue capacity, they were accepted before.
+     */
+    private void enqueue(Job job) {
+
+        if (!pending.add(job.id())) {
+            return;
+        }
+        queued.incrementAndGet();
+        execute(job);
+    }
+
+    private void execute(Job job) {
+
+        try {
+            executor.execute(new PrioritizedTask(job.id(), job.priority(), sequence.incrementAndGet()));
+        } catch (RejectedExecutionException e) {
+            // Only after shutdown, the job stays QUEUED and is picked up by recoverJobs on the next start
+            queued.decrementAndGet();
+            pending.remove(job.id());
+            logger.debug("Job {} left queued, the executor is shut down", job.id());
+        }
+    }
+
+    private void run(UUID id) {
+
+        // Only one instance gets to run a job, the others skip it
+        if (!jobRepository.claim(id, owner, lease)) {
+            logger.debug("Job {} skipped, it is finished or claimed by another instance", id);
+            return;
+        }
+        Optional<Job> found = publish(id);
+        if (found.isEmpty()) {
+            return;
+        }
+        Job job = found.get();
+
+        boolean completed;
+
+        try {
+            String result = switch (job.type()) {
+                case TRANSCRIPTION -> transcribe(job);
+                case IMAGE_GENERATION ->
+                        ImageGenerationService.path(imageGenerationService.generate(job.params().get("prompt")));
+            };
+            completed = jobRepository.complete(id, owner, JobStatus.SUCCEEDED, result, null);
+        } catch (AdmissionRejectedException e) {
+            // Background work can wait for capacity instead of failing
+            logger.debug("Job {} deferred for {}: {}", id, e.getRetryAfter(), e.getMessage());
+            if (!jobRepository.release(id, owner)) {
+                return;
+            }
+            publish(id);
+            try {
+                // enqueue leaves the job QUEUED for recoverJobs if the executor has shut down meanwhile
+                CompletableFuture.delayedExecutor(e.getRetryAfter().toMillis(), TimeUnit.MILLISECONDS)
+                        .execute(() -> enqueue(job));
+            } catch (RejectedExecutionException rejected) {
+                logger.debug("Job {} left queued, retry could not be scheduled", id);
+            }
+            return;
+        } catch (Exception e) {
+            logger.warn("Job {} failed: {}", id, e.getMessage());
+            completed = jobRepository.complete(id, owner, JobStatus.FAILED, null, e.getMessage());
+        }
+
+        if (!completed) {
+            // The lease expired meanwhile, the instance that took the job over reports it
+            logger.warn("Job {} finished after its lease was lost, the outcome is discarded", id);
+            return;
+        }
+        publish(id).ifPresent(this::notifyCallback);
+    }
+
+    private String transcribe(Job job) {
+
+        String filename = job.params().get("filename");
+        ByteArrayResource audioResource = new ByteArrayResource(jobRepository.findPayload(job.id())) {
+            @Override
+            public String getFilename() {
+
+                return filename;
+            }
+        };
+        return transcriptionService.transcribe(audioResource, job.params().get("language"));
+    }
+
+    private Optional<Job> publish(UUID id) {
+
+        Optional<Job> job = jobRepository.findById(id);
+        job.ifPresent(current -> {
+            List<SseEmitter> emitters = current.status().isTerminal()
+                    ? subscribers.remove(id)
+                    : subscribers.get(id);
+            if (emitters == null) {
+                return;
+            }
+            for (SseEmitter emitter : emitters) {
+                send(emitter, current);
+                if (current.status().isTerminal()) {
+                    emitter.complete();
+                }
+            }
+        });
+        return job;
+    }
+
+    private void send(SseEmitter emitter, Job job) {
+
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("status")
+                    .data(job, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        } catch (IllegalStateException e) {
+            // Already completed by a concurrent terminal update
+            logger.trace("Emitter for job {} already completed", job.id());
+        }
+    }
+
+    private void unsubscribe(UUID id, SseEmitter emitter) {
+
+        subscribers.computeIfPresent(id, (key, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+
+    private void notifyCallback(Job job) {
+
+        if (job.callbackUrl() == null || job.callbackUrl().isBlank() || !job.status().isTerminal()) {
+            return;
+        }
+        try {
+            // Checked again, the host may resolve to a different address than at submit time
+            callbackUrlValidator.validate(job.callbackUrl());
+            webhookClient.post()
+                    .uri(job.callbackUrl())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(job)
+                    .retrieve()
+                    .toBodilessEntity();
+        } catch (Exception e) {
+            logger.warn("Webhook for job {} to {} failed: {}", job.id(), job.callbackUrl(), e.getMessage());
+        }
+    }
+
+    private final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+        private final UUID jobId;
+        private final int priority;
+        private final long sequence;
+
+        private PrioritizedTask(UUID jobId, int priority, long sequence) {
+
+            this.jobId = jobId;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+
+            queued.decrementAndGet();
+            pending.remove(jobId);
+            JobService.this.run(jobId);
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            // Higher priority first, then first come first served
+            int byPriority = Integer.compare(other.priority, priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.example.service;
+
+import com.example.admission.AdmissionRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Chooses the chat model for each call. Short free-form and structured prompts and well-grounded RAG
+ * questions go to the small model, long prompts, weakly grounded questions and vision go to the large one.
+ * <p>
+ * A call that fails with a transient error falls back to the other model, and an answer from the small
+ * model that the caller does not trust is escalated to the large one. A call still running after the configured latency
+ * percentile of its model is hedged: the same call starts on the other model and the first answer wins.
+ */
+@Service
+public class ModelRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelRouter.class);
+    private static final String LATENCY_TIMER = "ai.routing.latency";
+
+    public enum Task {
+        FREE_FORM, STRUCTURED, RAG, VISION
+    }
+
+    /**
+     * The model to try first, the model to fall back or hedge to, and the model to escalate an
+     * unconvincing answer to, if any.
+     */
+    public record Route(String primary, String alternate, String escalation) {
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final String smallModel;
+    private final String largeModel;
+    private final int longPromptTokens;
+    private final double ragMinScore;
+    private final boolean hedgeEnabled;
+    private final double hedgePercentile;
+    private final long hedgeMinSamples;
+    private final Duration hedgeMinDelay;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ModelRouter(MeterRegistry meterRegistry,
+                       @Value("${ai.routing.enabled:true}") boolean enabled,
+                       @Value("${ai.routing.small-model:gpt-4o-mini}") String smallModel,
+                       @Value("${ai.routing.large-model:${spring.ai.openai.chat.options.model:gpt-4o}}") String largeModel,
+                       @Value("${ai.routing.long-prompt-tokens:2000}") int longPromptTokens,
+                       @Value("${ai.routing.rag.min-score:0.75}") double ragMinScore,
+                       @Value("${ai.routing.hedge.enabled:true}") boolean hedgeEnabled,
+                       @Value("${ai.routing.hedge.percentile:0.95}") double hedgePercentile,
+                       @Value("${ai.routing.hedge.min-samples:20}") long hedgeMinSamples,
+                       @Value("${ai.routing.hedge.min-delay:2s}") Duration hedgeMinDelay) {
+
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.smallModel = smallModel;
+        this.largeModel = largeModel;
+        this.longPromptTokens = longPromptTokens;
+        this.ragMinScore = ragMinScore;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinSamples = hedgeMinSamples;
+        this.hedgeMinDelay = hedgeMinDelay;
+    }
+
+    /**
+     * @param promptText     the text sent to the model, used to estimate the prompt length
+     * @param retrievalScore similarity of the best retrieved document for RAG, {@code null} otherwise
+     */
+    public Route route(Task task, String promptText, Double retrievalScore) {
+
+        if (!enabled) {
+            return new Route(largeModel, null, null);
+        }
+
+        boolean longPrompt = promptText != null && promptText.length() / 4 > longPromptTokens;
+        boolean small = switch (task) {
+            case FREE_FORM, STRUCTURED -> !longPrompt;
+            case RAG -> !longPrompt && retrievalScore != null && retrievalScore >= ragMinScore;
+            case VISION -> false;
+        };
+        return small
+                ? new Route(smallModel, largeModel, largeModel)
+                : new Route(largeModel, smallModel, null);
+    }
+
+    /**
+     * Runs {@code call} with the options of the routed model.
+     *
+     * @param call      performs the model call and any conversion of its result with the given options
+     * @param confident tells whether a result can be returned as is, otherwise it is escalated when possible
+     */
+    public <T> T call(Route route, Task task, Function<ChatOptions, T> call, Predicate<T> confident) {
+
+        T result;
+        try {
+            result = attempt(route, call);
+        } catch (AdmissionRejectedException e) {
+            // Another model on the same endpoint would be rejected as well
+            throw e;
+        } catch (RuntimeException e) {
+            if (route.alternate() == null || !isTransient(e)) {
+                throw e;
+            }
+            logger.debug("{} call to {} failed, falling back to {}: {}", task, route.primary(), route.alternate(),
+                    e.getMessage());
+            count(task, route.alternate(), "fallback");
+            return timed(route.alternate(), call);
+        }
+
+        if (route.escalation() != null && !confident.test(result)) {
+            logger.debug("{} answer from {} not confident, escalating to {}", task, route.primary(),
+                    route.escalation());
+            count(task, route.escalation(), "escalated");
+            return timed(route.escalation(), call);
+        }
+        count(task, route.primary(), "primary");
+        return result;
+    }
+
+    public <T> T call(Route route, Task task, Function<ChatOptions, T> call) {
+
+        return call(route, task, call, result -> true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        executor.shutdownNow();
+    }
+
+    private <T> T attempt(Route route, Function<ChatOptions, T> call) {
+
+        Optional<Duration> hedgeDelay = route.alternate() == null ? Optional.empty() : hedgeDelay(route.primary());
+        if (hedgeDelay.isEmpty()) {
+            return timed(route.primary(), call);
+        }
+
+        InFlight<T> primary = async(() -> timed(route.primary(), call));
+        try {
+            return primary.result().get(hedgeDelay.get().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            logger.debug("{} slower than {}, hedging with {}", route.primary(), hedgeDelay.get(), route.alternate());
+            meterRegistry.counter("ai.routing.hedges", "model", route.alternate()).increment();
+            InFlight<T> hedge = async(() -> timed(route.alternate(), call));
+            return firstSuccessful(primary, hedge);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            primary.cancel();
+            throw new IllegalStateException("Interrupted while waiting for " + route.primary(), e);
+        }
+    }
+
+    private <T> T firstSuccessful(InFlight<T> first, InFlight<T> second) {
+
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        first.result().whenComplete((result, error) -> {
+            if (error == null) {
+                winner.complete(result);
+            } else {
+                second.result().whenComplete((ignored, secondError) -> winner.completeExceptionally(error));
+            }
+        });
+        second.result().whenComplete((result, error) -> {
+            if (error == null) {
+                winner.complete(result);
+            } else {
+                first.result().whenComplete((ignored, firstError) -> winner.completeExceptionally(error));
+            }
+        });
+
+        try {
+            return winner.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a hedged call", e);
+        } finally {
+            // Interrupts the loser, which aborts its HTTP request and gives back its admission permit
+            first.cancel();
+            second.cancel();
+        }
+    }
+
+    private <T> InFlight<T> async(Supplier<T> work) {
+        // Carry the request attributes over, so metrics still see the endpoint being served
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            RequestContextHolder.setRequestAttributes(attributes);
+            try {
+                result.complete(work.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+            }
+        });
+        return new InFlight<>(result, task);
+    }
+
+    private <T> T timed(String model, Function<ChatOptions, T> call) {
+
+        long start = System.nanoTime();
+        T result = call.apply(OpenAiChatOptions.builder().model(model).build());
+        latencyTimer(model).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    private Optional<Duration> hedgeDelay(String model) {
+
+        if (!hedgeEnabled) {
+            return Optional.empty();
+        }
+        Timer timer = latencyTimer(model);
+        if (timer.count() < hedgeMinSamples) {
+            return Optional.empty();
+        }
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            if (value.percentile() == hedgePercentile) {
+                Duration delay = Duration.ofNanos((long) value.value(TimeUnit.NANOSECONDS));
+                return Optional.of(delay.compareTo(hedgeMinDelay) < 0 ? hedgeMinDelay : delay);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Timer latencyTimer(String model) {
+
+        return Timer.builder(LATENCY_TIMER)
+                .description("Latency of successful routed chat calls, used to decide when to hedge")
+                .tag("model", model)
+                .publishPercentiles(hedgePercentile)
+                .distributionStatisticExpiry(Duration.ofMinutes(5))
+                .register(meterRegistry);
+    }
+
+    private void count(Task task, String model, String outcome) {
+
+        Counter.builder("ai.routing.calls")
+                .description("Routed chat calls by the model that produced the answer")
+                .tag("task", task.name().toLowerCase())
+                .tag("model", model)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Timeouts and other I/O errors, 5xx and 429 responses, which the other model may well not run into.
+     * Client errors and replies that do not convert are the caller's to handle.
+     */
+    static boolean isTransient(RuntimeException error) {
+
+        if (error instanceof TransientAiException || error instanceof ResourceAccessException) {
+            return true;
+        }
+        if (error instanceof RestClientResponseException response) {
+            HttpStatusCode status = response.getStatusCode();
+            return status.is5xxServerError() || status.value() == HttpStatus.TOO_MANY_REQUESTS.value();
+        }
+        return false;
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+
+        if (error instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new IllegalStateException(error);
+    }
+
+    /**
+     * A call running on the executor. Cancelling the task rather than the {@link CompletableFuture}
+     * interrupts the thread making the call.
+     */
+    private record InFlight<T>(CompletableFuture<T> result, Future<?> task) {
+
+        void cancel() {
+
+            if (!result.isDone()) {
+                task.cancel(true);
+                result.cancel(false);
+            }
+        }
+    }
+}
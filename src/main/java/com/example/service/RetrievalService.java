@@ -0,0 +1,76 @@
+package com.example.service;
+
+import com.example.metrics.AiMetrics;
+import com.example.model.RetrievedDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service
+public class RetrievalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetrievalService.class);
+    public static final int TOP_K = 5;
+
+    private final EmbeddingModel embeddingModel;
+    private final VectorSearchRepository vectorSearchRepository;
+    private final VectorCollectionRepository vectorCollectionRepository;
+    private final AiMetrics aiMetrics;
+
+    public RetrievalService(EmbeddingModel embeddingModel,
+                            VectorSearchRepository vectorSearchRepository,
+                            VectorCollectionRepository vectorCollectionRepository,
+                            AiMetrics aiMetrics) {
+
+        this.embeddingModel = embeddingModel;
+        this.vectorSearchRepository = vectorSearchRepository;
+        this.vectorCollectionRepository = vectorCollectionRepository;
+        this.aiMetrics = aiMetrics;
+    }
+
+    /**
+     * The closest documents to the question, best match first, each with its similarity score.
+     *
+     * @param collection the collection to search, all of them when {@code null}
+     */
+    public List<Document> search(String q, String collection) {
+
+        float[] embedding = embeddingModel.embed(q);
+        List<String> collections = collections(collection);
+        List<RetrievedDocument> documents = aiMetrics.time(AiMetrics.Stage.VECTOR_SEARCH, AiMetrics.NO_MODEL,
+                () -> vectorSearchRepository.search(embedding, TOP_K, collections));
+
+        if (documents.isEmpty()) {
+            logger.debug("No similar documents found for query: {}", q);
+            return List.of();
+        }
+        return documents.stream().map(RetrievedDocument::toDocument).toList();
+    }
+
+    /**
+     * The collections a search covers, {@code collection} alone or every collection when it is {@code null}.
+     */
+    public List<String> collections(String collection) {
+
+        return collection != null ? List.of(collection) : vectorCollectionRepository.findNames();
+    }
+
+    /**
+     * The text of the documents in id order, so the same documents always render the same way whatever their
+     * scores. Metadata is left out, it holds the per-query distance.
+     */
+    public static String joinDocuments(List<Document> documents) {
+
+        return documents
+                .stream()
+                .sorted(Comparator.comparing(Document::getId))
+                .map(Document::getText)
+                .collect(Collectors.joining("\n\n"));
+    }
+}
@@ -0,0 +1,429 @@
+package com.example.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentTransformer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Splits page documents into chunks along the structure of the text rather than at fixed token counts.
+ * Section headings ({@code rag.chunking.section-pattern}), article headings ({@code rag.chunking.article-pattern}),
+ * numbered paragraphs ({@code rag.chunking.paragraph-pattern}) and blank lines separate units. Units are
+ * packed into chunks of at most {@code rag.chunking.max-tokens}, a new chunk starts at every section or
+ * article once the current one holds {@code rag.chunking.min-tokens}, and chunks may run across pages.
+ * <p>
+ * A chunk that continues an article repeats up to {@code rag.chunking.overlap-tokens} of the text before
+ * it. Units longer than a chunk are split into sentences, and sentences into token windows. Pages are
+ * split and tokenised in parallel, only the packing is sequential.
+ * <p>
+ * Every chunk keeps the metadata of its first page and records {@code page_number} and
+ * {@code end_page_number}, {@code start_offset} and {@code end_offset} as character offsets into the text
+ * of those pages, {@code chunk_index}, {@code token_count}, and the {@code section} and {@code article} it
+ * belongs to, when known.
+ */
+@Component
+public class StructuralTextSplitter implements DocumentTransformer {
+
+    private static final Pattern SENTENCE = Pattern.compile("[^.!?;]+[.!?;]*\\s*|[.!?;]+\\s*");
+    private static final Pattern ARTICLE_LABEL = Pattern.compile("^\\S+\\s*\\d+[a-z]?", Pattern.CASE_INSENSITIVE);
+    private static final String PAGE_NUMBER = "page_number";
+    private static final String END_PAGE_NUMBER = "end_page_number";
+    private static final String FILE_NAME = "file_name";
+    // Units of a chunk are joined by a line break, which costs a token of the budget
+    private static final String SEPARATOR = "\n";
+    private static final int SEPARATOR_TOKENS = 1;
+
+    private final Encoding encoding = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+    private final int maxTokens;
+    private final int minTokens;
+    private final int overlapTokens;
+    private final Pattern sectionPattern;
+    private final Pattern articlePattern;
+    private final Pattern paragraphPattern;
+
+    public StructuralTextSplitter(@Value("${rag.chunking.max-tokens:512}") int maxTokens,
+                                  @Value("${rag.chunking.min-tokens:64}") int minTokens,
+                                  @Value("${rag.chunking.overlap-tokens:64}") int overlapTokens,
+                                  @Value("${rag.chunking.section-pattern:(CHAPTER|Chapter|SECTION|Section)\\s+\\S+(\\s+[\\p{Lu}\\s,]+)?}") String sectionPattern,
+                                  @Value("${rag.chunking.article-pattern:(Art\\.|Article)\\s*\\d+[a-z]?\\b.*}") String articlePattern,
+                                  @Value("${rag.chunking.paragraph-pattern:\\(\\d+\\)\\s.*}") String paragraphPattern) {
+
+        if (maxTokens < 1 || minTokens < 0 || overlapTokens < 0 || overlapTokens >= maxTokens) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 <= overlap-tokens < max-tokens and min-tokens >= 0");
+        }
+        this.maxTokens = maxTokens;
+        this.minTokens = minTokens;
+        this.overlapTokens = overlapTokens;
+        this.sectionPattern = Pattern.compile(sectionPattern);
+        this.articlePattern = Pattern.compile(articlePattern);
+        this.paragraphPattern = Pattern.compile(paragraphPattern);
+    }
+
+    @Override
+    public List<Document> apply(List<Document> documents) {
+
+        // Tokenising dominates, so every page is split and counted on its own
+        List<List<Unit>> pages = documents.parallelStream()
+                .map(this::units)
+                .toList();
+
+        List<Chunk> chunks = pack(pages.stream().flatMap(List::stream).toList());
+
+        return IntStream.range(0, chunks.size())
+                .parallel()
+                .mapToObj(index -> toDocument(chunks.get(index), index))
+                .toList();
+    }
+
+    /**
+     * Cuts one page into units at headings, numbered paragraphs and blank lines, splitting units that
+     * exceed a chunk.
+     */
+    private List<Unit> units(Document page) {
+
+        String text = page.getText() != null ? page.getText() : "";
+        List<Unit> units = new ArrayList<>();
+        int start = -1;
+        int end = -1;
+        String section = null;
+        String article = null;
+
+        int lineStart = 0;
+        while (lineStart <= text.length()) {
+            int newline = text.indexOf('\n', lineStart);
+            int lineEnd = newline >= 0 ? newline : text.length();
+            String line = text.substring(lineStart, lineEnd).strip();
+
+            if (line.isEmpty()) {
+                addUnit(units, page, text, start, end, section, article);
+                start = -1;
+                section = null;
+                article = null;
+            } else {
+                boolean isSection = sectionPattern.matcher(line).matches();
+                boolean isArticle = !isSection && articlePattern.matcher(line).matches();
+                if (isSection || isArticle || paragraphPattern.matcher(line).matches()) {
+                    addUnit(units, page, text, start, end, section, article);
+                    start = -1;
+                    section = isSection ? line : null;
+                    article = isArticle ? label(line) : null;
+                }
+                if (start < 0) {
+                    start = lineStart + leadingWhitespace(text, lineStart, lineEnd);
+                }
+                end = lineStart + text.substring(lineStart, lineEnd).stripTrailing().length();
+            }
+            if (newline < 0) {
+                break;
+            }
+            lineStart = newline + 1;
+        }
+        addUnit(units, page, text, start, end, section, article);
+        return units;
+    }
+
+    private void addUnit(List<Unit> units, Document page, String text, int start, int end,
+                         String section, String article) {
+
+        if (start < 0 || end <= start) {
+            return;
+        }
+        String unitText = text.substring(start, end);
+        int tokens = encoding.countTokens(unitText);
+        if (tokens <= maxTokens) {
+            units.add(new Unit(page, unitText, start, end, tokens, section, article));
+            return;
+        }
+
+        // Too long for one chunk, fall back to sentences and then to token windows
+        boolean first = true;
+        Matcher sentences = SENTENCE.matcher(unitText);
+        while (sentences.find()) {
+            String sentence = sentences.group().stripTrailing();
+            if (sentence.isBlank()) {
+                continue;
+            }
+            int sentenceStart = start + sentences.start();
+            int sentenceTokens = encoding.countTokens(sentence);
+            if (sentenceTokens <= maxTokens) {
+                units.add(new Unit(page, sentence, sentenceStart, sentenceStart + sentence.length(), sentenceTokens,
+                        first ? section : null, first ? article : null));
+                first = false;
+                continue;
+            }
+            for (Unit window : windows(page, sentence, sentenceStart)) {
+                units.add(first ? window.withContext(section, article) : window);
+                first = false;
+            }
+        }
+    }
+
+    /**
+     * Cuts text longer than a chunk into windows of at most {@code maxTokens} tokens. Windows end at
+     * character boundaries, a token boundary can fall inside a multibyte character, so the windows are
+     * substrings of the text and their offsets stay exact.
+     */
+    private List<Unit> windows(Document page, String text, int start) {
+
+        IntArrayList encoded = encoding.encode(text);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        // The byte offset at which each token ends
+        int[] tokenEnds = new int[encoded.size()];
+        IntArrayList token = new IntArrayList(1);
+        for (int i = 0, end = 0; i < encoded.size(); i++) {
+            token.clear();
+            token.add(encoded.get(i));
+            end += encoding.decodeBytes(token).length;
+            tokenEnds[i] = end;
+        }
+
+        List<Unit> windows = new ArrayList<>();
+        int from = 0;
+        int byteStart = 0;
+        int charStart = 0;
+        while (from < encoded.size() && byteStart < bytes.length) {
+            String window;
+            int byteEnd;
+            int tokens;
+            // Text cut at a character boundary can tokenise differently, shorten until it fits
+            int count = Math.min(maxTokens, encoded.size() - from);
+            do {
+                byteEnd = characterBoundary(bytes, tokenEnds[from + count - 1], byteStart);
+                window = new String(bytes, byteStart, byteEnd - byteStart, StandardCharsets.UTF_8);
+                tokens = encoding.countTokens(window);
+            } while (tokens > maxTokens && --count > 0);
+
+            windows.add(new Unit(page, window, start + charStart, start + charStart + window.length(), tokens,
+                    null, null));
+            byteStart = byteEnd;
+            charStart += window.length();
+            while (from < encoded.size() && tokenEnds[from] <= byteStart) {
+                from++;
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * The start of the UTF-8 character at or before {@code offset}, or of the one after {@code min} if that
+     * leaves nothing after {@code min}.
+     */
+    private static int characterBoundary(byte[] bytes, int offset, int min) {
+
+        int boundary = offset;
+        while (boundary < bytes.length && boundary > min && (bytes[boundary] & 0xc0) == 0x80) {
+            boundary--;
+        }
+        if (boundary <= min) {
+            boundary = min + 1;
+            while (boundary < bytes.length && (bytes[boundary] & 0xc0) == 0x80) {
+                boundary++;
+            }
+        }
+        return boundary;
+    }
+
+    /**
+     * Packs units into chunks, starting a chunk at sections and articles, at a new file and whenever the
+     * next unit would overflow the current one.
+     */
+    private List<Chunk> pack(List<Unit> units) {
+
+        List<Chunk> chunks = new ArrayList<>();
+        Deque<Unit> current = new ArrayDeque<>();
+        int currentTokens = 0;
+        // Units at the start of the current chunk repeated from the previous one, and their tokens
+        int overlapping = 0;
+        int overlappingTokens = 0;
+        String section = null;
+        String article = null;
+
+        for (Unit unit : units) {
+            boolean newFile = !current.isEmpty()
+                    && !Objects.equals(unit.page().getMetadata().get(FILE_NAME),
+                    current.peekLast().page().getMetadata().get(FILE_NAME));
+            if (newFile) {
+                section = null;
+                article = null;
+            }
+            boolean boundary = unit.section() != null || unit.article() != null;
+            if (unit.section() != null) {
+                section = unit.section();
+                article = null;
+            }
+            if (unit.article() != null) {
+                article = unit.article();
+            }
+            Unit placed = unit.withContext(section, article);
+
+            boolean full = withUnit(current, currentTokens, unit) > maxTokens;
+            boolean structural = newFile || (boundary && currentTokens - overlappingTokens >= minTokens);
+            if (current.size() > overlapping && (full || structural)) {
+                chunks.add(new Chunk(List.copyOf(current), overlapping));
+                // A chunk that starts a section, article or file does not repeat the text before it
+                List<Unit> overlap = structural ? List.of() : overlap(current);
+                current.clear();
+                current.addAll(overlap);
+                currentTokens = tokens(overlap);
+                overlapping = overlap.size();
+                overlappingTokens = currentTokens;
+            } else if (current.size() == overlapping && (newFile || boundary)) {
+                current.clear();
+                currentTokens = 0;
+                overlapping = 0;
+                overlappingTokens = 0;
+            }
+            while (withUnit(current, currentTokens, unit) > maxTokens && overlapping > 0) {
+                int dropped = current.removeFirst().tokens() + (current.isEmpty() ? 0 : SEPARATOR_TOKENS);
+                currentTokens -= dropped;
+                overlappingTokens -= dropped;
+                overlapping--;
+            }
+            currentTokens = withUnit(current, currentTokens, unit);
+            current.addLast(placed);
+        }
+        if (current.size() > overlapping) {
+            chunks.add(new Chunk(List.copyOf(current), overlapping));
+        }
+        return chunks;
+    }
+
+    /**
+     * The trailing units of a chunk that fit the overlap budget, or the trailing sentences of its last unit.
+     */
+    private List<Unit> overlap(Deque<Unit> chunk) {
+
+        List<Unit> overlap = new ArrayList<>();
+        int tokens = 0;
+        for (var it = chunk.descendingIterator(); it.hasNext(); ) {
+            Unit unit = it.next();
+            int withUnit = tokens + unit.tokens() + (overlap.isEmpty() ? 0 : SEPARATOR_TOKENS);
+            if (withUnit > overlapTokens) {
+                break;
+            }
+            overlap.addFirst(unit);
+            tokens = withUnit;
+        }
+        if (!overlap.isEmpty() || overlapTokens == 0) {
+            return overlap;
+        }
+
+        Unit last = chunk.getLast();
+        int from = last.text().length();
+        List<int[]> bounds = new ArrayList<>();
+        Matcher sentences = SENTENCE.matcher(last.text());
+        while (sentences.find()) {
+            bounds.add(new int[]{sentences.start(), sentences.end()});
+        }
+        for (int i = bounds.size() - 1; i > 0; i--) {
+            int candidate = bounds.get(i)[0];
+            if (encoding.countTokens(last.text().substring(candidate)) > overlapTokens) {
+                break;
+            }
+            from = candidate;
+        }
+        if (from >= last.text().length()) {
+            return List.of();
+        }
+        String tail = last.text().substring(from);
+        return List.of(new Unit(last.page(), tail, last.start() + from, last.end(), encoding.countTokens(tail),
+                last.section(), last.article()));
+    }
+
+    /**
+     * The tokens of a chunk of {@code current}, counted as {@code currentTokens}, once {@code unit} is added.
+     */
+    private static int withUnit(Deque<Unit> current, int currentTokens, Unit unit) {
+
+        return currentTokens + (current.isEmpty() ? 0 : SEPARATOR_TOKENS) + unit.tokens();
+    }
+
+    private static int tokens(List<Unit> units) {
+
+        return units.stream().mapToInt(Unit::tokens).sum() + Math.max(0, units.size() - 1) * SEPARATOR_TOKENS;
+    }
+
+    private Document toDocument(Chunk chunk, int index) {
+
+        List<Unit> units = chunk.units();
+        Unit first = units.getFirst();
+        Unit last = units.getLast();
+        // The chunk belongs to the section of its first unit that is not repeated
+        Unit lead = units.get(chunk.overlapping());
+        String text = units.stream().map(Unit::text).collect(Collectors.joining(SEPARATOR));
+
+        Map<String, Object> metadata = new HashMap<>(first.page().getMetadata());
+        Object endPage = last.page().getMetadata().getOrDefault(END_PAGE_NUMBER,
+                last.page().getMetadata().get(PAGE_NUMBER));
+        if (endPage != null) {
+            metadata.put(END_PAGE_NUMBER, endPage);
+        }
+        metadata.put("start_offset", first.start());
+        metadata.put("end_offset", last.end());
+        metadata.put("chunk_index", index);
+        metadata.put("token_count", encoding.countTokens(text));
+        if (lead.section() != null) {
+            metadata.put("section", lead.section());
+        }
+        // A chunk opening with a section heading belongs to the first article after it
+        units.subList(chunk.overlapping(), units.size()).stream()
+                .map(Unit::article)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .ifPresent(article -> metadata.put("article", article));
+        return new Document(text, metadata);
+    }
+
+    /**
+     * The article heading without the text that follows it on the same line, e.g. {@code Art. 5}.
+     */
+    private static String label(String line) {
+
+        Matcher matcher = ARTICLE_LABEL.matcher(line);
+        return matcher.find() ? matcher.group() : line;
+    }
+
+    private static int leadingWhitespace(String text, int from, int to) {
+
+        int i = from;
+        while (i < to && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i - from;
+    }
+
+    /**
+     * A heading, paragraph, sentence or token window of one page. {@code section} and {@code article} are
+     * the headings the unit starts while splitting, and the headings it belongs to once packed.
+     */
+    private record Unit(Document page, String text, int start, int end, int tokens, String section, String article) {
+
+        Unit withContext(String section, String article) {
+
+            return new Unit(page, text, start, end, tokens, section, article);
+        }
+    }
+
+    /**
+     * @param overlapping the number of leading units repeated from the previous chunk
+     */
+    private record Chunk(List<Unit> units, int overlapping) {
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.service;
+
+import com.example.metrics.AiMetrics;
+import org.springframework.ai.audio.transcription.AudioTranscriptionPrompt;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionOptions;
+import org.springframework.ai.openai.api.OpenAiAudioApi;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+@Service
+public class TranscriptionService {
+
+    private final OpenAiAudioTranscriptionModel openAiAudioTranscriptionModel;
+    private final AiMetrics aiMetrics;
+    private final String model;
+
+    public TranscriptionService(OpenAiAudioTranscriptionModel openAiAudioTranscriptionModel,
+                                AiMetrics aiMetrics,
+                                @Value("${spring.ai.openai.audio.transcription.options.model:whisper-1}") String model) {
+
+        this.openAiAudioTranscriptionModel = openAiAudioTranscriptionModel;
+        this.aiMetrics = aiMetrics;
+        this.model = model;
+    }
+
+    public String transcribe(Resource audio, String language) {
+        //https://platform.openai.com/docs/api-reference/audio/createTranscription
+        OpenAiAudioTranscriptionOptions options
+                = OpenAiAudioTranscriptionOptions
+                .builder()
+                .language(language)
+                .responseFormat(OpenAiAudioApi.TranscriptResponseFormat.SRT)
+                .temperature(0.5f)
+                .build();
+
+        AudioTranscriptionPrompt prompt
+                = new AudioTranscriptionPrompt(audio, options);
+
+        // The transcription model does not report observations, so the call is timed here
+        return aiMetrics.time(AiMetrics.Stage.MODEL_CALL, model, () -> openAiAudioTranscriptionModel
+                .call(prompt)
+                .getResult()
+                .getOutput());
+    }
+}
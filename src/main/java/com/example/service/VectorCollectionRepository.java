@@ -0,0 +1,207 @@
+package com.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Collections of the partitioned {@code vector_store} table. Every collection is a list partition with its
+ * own HNSW index, so index builds and the working set of a search grow with one collection, not the corpus.
+ * Documents are written here rather than through {@code PgVectorStore}, whose upsert on {@code id} alone
+ * is not possible on a table partitioned by collection.
+ * <p>
+ * Index builds and the migration copy scale with the collection, they run without the write pool's
+ * statement timeout.
+ */
+@Repository
+public class VectorCollectionRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorCollectionRepository.class);
+    private static final Pattern COLLECTION = Pattern.compile("[a-z0-9_]{1,48}");
+    private static final String UNPARTITIONED = "vector_store_unpartitioned";
+    private static final Duration CACHE_TTL = Duration.ofSeconds(30);
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcClient jdbcClient;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transaction;
+    private volatile List<String> cachedNames;
+    private volatile long cachedAt;
+
+    public VectorCollectionRepository(JdbcClient jdbcClient,
+                                      DataSource dataSource,
+                                      ObjectMapper objectMapper) {
+
+        this.jdbcClient = jdbcClient;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    public static boolean isValidName(String collection) {
+
+        return collection != null && COLLECTION.matcher(collection).matches();
+    }
+
+    /**
+     * Names of all collections, refreshed from {@code vector_collection} at most every 30 seconds.
+     */
+    public List<String> findNames() {
+
+        List<String> names = cachedNames;
+        if (names == null || System.nanoTime() - cachedAt > CACHE_TTL.toNanos()) {
+            names = jdbcClient.sql("SELECT name FROM vector_collection ORDER BY name")
+                    .query(String.class)
+                    .list();
+            cachedNames = names;
+            cachedAt = System.nanoTime();
+        }
+        return names;
+    }
+
+    public long count(String collection) {
+
+        return jdbcClient.sql("SELECT count(*) FROM vector_store WHERE collection = :collection")
+                .param("collection", collection)
+                .query(Long.class)
+                .single();
+    }
+
+    /**
+     * Stores documents with their embeddings in a collection, creating its partition and HNSW index when
+     * needed. Documents with an id that is already stored in the collection replace it.
+     */
+    public void save(String collection, List<Document> documents, List<float[]> embeddings) {
+
+        // Outside the transaction, attaching a partition locks vector_store against searches until commit
+        createPartition(collection);
+        List<Integer> rows = IntStream.range(0, documents.size()).boxed().toList();
+        // One transaction sent in batches, so a failed load leaves nothing behind and rows are not a round trip each
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("""
+                            INSERT INTO vector_store (id, collection, content, metadata, embedding)
+                            VALUES (?, ?, ?, CAST(? AS json), CAST(? AS vector))
+                            ON CONFLICT (collection, id) DO UPDATE
+                            SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding
+                            """, rows, BATCH_SIZE, (statement, i) -> {
+                Document document = documents.get(i);
+                statement.setObject(1, UUID.fromString(document.getId()));
+                statement.setString(2, collection);
+                statement.setString(3, document.getText());
+                statement.setString(4, toJson(document));
+                statement.setString(5, VectorSearchRepository.toVectorLiteral(embeddings.get(i)));
+            });
+        });
+        // Built after the first load, which is much faster than inserting into an existing HNSW graph
+        createIndex(collection);
+    }
+
+    /**
+     * Moves the rows of a {@code vector_store} created before partitioning into {@code collection}. The old
+     * table is renamed, the schema recreated and the rows copied in one transaction, under an advisory lock so
+     * instances starting together migrate once.
+     */
+    public void migrateUnpartitioned(String collection) {
+
+        transaction.executeWithoutResult(status -> {
+            // Waiting for the lock while another instance copies must not time out either
+            jdbcClient.sql("SET LOCAL statement_timeout = 0").update();
+            jdbcClient.sql("SELECT pg_advisory_xact_lock(hashtext('vector_store_migration'))").query().singleRow();
+
+            if ("r".equals(relationKind("vector_store").orElse(null)) && relationKind(UNPARTITIONED).isEmpty()) {
+                logger.info("Partitioning vector_store, existing rows move to collection '{}'", collection);
+                jdbcClient.sql("ALTER TABLE vector_store RENAME TO " + UNPARTITIONED).update();
+                // On the transaction's connection, so a failure rolls the rename back as well
+                new ResourceDatabasePopulator(new ClassPathResource("schema.sql"))
+                        .populate(DataSourceUtils.getConnection(dataSource));
+            }
+
+            if (relationKind(UNPARTITIONED).isPresent()) {
+                createPartition(collection);
+                int copied = jdbcClient.sql("""
+                                INSERT INTO vector_store (id, collection, content, metadata, embedding)
+                                SELECT id, :collection, content, metadata, embedding FROM vector_store_unpartitioned
+                                ON CONFLICT DO NOTHING
+                                """)
+                        .param("collection", collection)
+                        .update();
+                createIndex(collection);
+                jdbcClient.sql("DROP TABLE " + UNPARTITIONED).update();
+                logger.info("Moved {} vectors into collection '{}'", copied, collection);
+            }
+        });
+    }
+
+    private void createPartition(String collection) {
+
+        if (!isValidName(collection)) {
+            throw new IllegalArgumentException("Invalid collection name: " + collection);
+        }
+        // The name is validated above, identifiers and partition bounds cannot be bound as parameters
+        jdbcClient.sql("CREATE TABLE IF NOT EXISTS vector_store_" + collection
+                        + " PARTITION OF vector_store FOR VALUES IN ('" + collection + "')")
+                .update();
+        jdbcClient.sql("INSERT INTO vector_collection (name) VALUES (:name) ON CONFLICT (name) DO NOTHING")
+                .param("name", collection)
+                .update();
+        cachedNames = null;
+    }
+
+    private void createIndex(String collection) {
+
+        withoutStatementTimeout(() -> jdbcClient.sql("CREATE INDEX IF NOT EXISTS vector_store_" + collection
+                        + "_embedding_idx ON vector_store_" + collection + " USING HNSW (embedding vector_cosine_ops)")
+                .update());
+    }
+
+    /**
+     * Runs {@code work} in a transaction, joining the current one if any, with the statement timeout lifted
+     * until it ends.
+     */
+    private <T> T withoutStatementTimeout(Supplier<T> work) {
+
+        return transaction.execute(status -> {
+            jdbcClient.sql("SET LOCAL statement_timeout = 0").update();
+            return work.get();
+        });
+    }
+
+    private Optional<String> relationKind(String table) {
+
+        return jdbcClient.sql("SELECT relkind::text FROM pg_class WHERE oid = to_regclass(:table)")
+                .param("table", table)
+                .query(String.class)
+                .optional();
+    }
+
+    private String toJson(Document document) {
+
+        try {
+            return objectMapper.writeValueAsString(document.getMetadata());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unable to serialize document metadata", e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.service;
+
+import com.example.config.ReadWriteRoutingDataSource;
+import com.example.model.RetrievedDocument;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Similarity searches against the partitioned {@code vector_store} table. A search over several collections
+ * runs on each partition in parallel, each using its own HNSW index, and the per-partition top K are merged.
+ * <p>
+ * An HNSW index scan returns at most {@code hnsw.ef_search} rows, so searches for more than the default 40
+ * documents raise it for their transaction. Large batches are split into statements of at most
+ * {@value #QUERIES_PER_STATEMENT} queries, each of which has to finish within the read pool's statement timeout.
+ */
+@Repository
+public class VectorSearchRepository {
+
+    private static final int DEFAULT_EF_SEARCH = 40;
+    static final int QUERIES_PER_STATEMENT = 32;
+
+    private final JdbcClient jdbcClient;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readTransaction;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public VectorSearchRepository(JdbcClient jdbcClient,
+                                  DataSource dataSource,
+                                  ObjectMapper objectMapper) {
+
+        this.jdbcClient = jdbcClient;
+        this.objectMapper = objectMapper;
+        this.readTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.readTransaction.setReadOnly(true);
+    }
+
+    public List<RetrievedDocument> search(float[] embedding, int topK, List<String> collections) {
+
+        return searchBatch(List.of(embedding), topK, collections).getFirst();
+    }
+
+    /**
+     * Runs the top-K lookup for the query vectors in few statements per collection: the vectors are unnested
+     * with their position and each one drives an HNSW index scan through a lateral join. Runs on the read pool.
+     *
+     * @return the documents of each query in the order of {@code embeddings}, best match first
+     */
+    public List<List<RetrievedDocument>> searchBatch(List<float[]> embeddings, int topK, List<String> collections) {
+
+        if (embeddings.isEmpty() || collections.isEmpty()) {
+            return embeddings.stream().<List<RetrievedDocument>>map(embedding -> List.of()).toList();
+        }
+
+        List<String> literals = new ArrayList<>();
+        for (int start = 0; start < embeddings.size(); start += QUERIES_PER_STATEMENT) {
+            literals.add(toArrayLiteral(
+                    embeddings.subList(start, Math.min(start + QUERIES_PER_STATEMENT, embeddings.size()))));
+        }
+        if (collections.size() == 1) {
+            return searchCollection(literals, embeddings.size(), topK, collections.getFirst());
+        }
+
+        List<CompletableFuture<List<List<RetrievedDocument>>>> partitions = collections.stream()
+                .map(collection -> CompletableFuture.supplyAsync(
+                        () -> searchCollection(literals, embeddings.size(), topK, collection), executor))
+                .toList();
+
+        List<List<RetrievedDocument>> merged = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            merged.add(new ArrayList<>());
+        }
+        try {
+            for (CompletableFuture<List<List<RetrievedDocument>>> partition : partitions) {
+                List<List<RetrievedDocument>> results = partition.join();
+                for (int i = 0; i < results.size(); i++) {
+                    merged.get(i).addAll(results.get(i));
+                }
+            }
+        } catch (CompletionException e) {
+            partitions.forEach(partition -> partition.cancel(true));
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+
+        return merged.stream()
+                .map(documents -> documents.stream()
+                        .sorted(Comparator.comparingDouble(RetrievedDocument::score).reversed())
+                        .limit(topK)
+                        .toList())
+                .toList();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param chunks array literals of consecutive query vectors, {@value #QUERIES_PER_STATEMENT} per literal
+     *               except the last
+     */
+    private List<List<RetrievedDocument>> searchCollection(List<String> chunks, int queries, int topK,
+                                                           String collection) {
+
+        List<List<RetrievedDocument>> results = new ArrayList<>(queries);
+        for (int i = 0; i < queries; i++) {
+            results.add(new ArrayList<>(topK));
+        }
+
+        if (topK <= DEFAULT_EF_SEARCH && chunks.size() == 1) {
+            return ReadWriteRoutingDataSource.read(() -> query(chunks.getFirst(), 0, topK, collection, results));
+        }
+        // One transaction for all chunks, they read the same snapshot and SET LOCAL lasts until its end
+        return ReadWriteRoutingDataSource.read(() -> readTransaction.execute(status -> {
+            if (topK > DEFAULT_EF_SEARCH) {
+                jdbcClient.sql("SET LOCAL hnsw.ef_search = " + topK).update();
+            }
+            for (int i = 0; i < chunks.size(); i++) {
+                query(chunks.get(i), i * QUERIES_PER_STATEMENT, topK, collection, results);
+            }
+            return results;
+        }));
+    }
+
+    /**
+     * Adds the documents found for each vector of {@code embeddings} to {@code results}, starting at
+     * {@code offset}.
+     */
+    private List<List<RetrievedDocument>> query(String embeddings, int offset, int topK, String collection,
+                                                List<List<RetrievedDocument>> results) {
+
+        // The collection condition prunes the scan to a single partition
+        return jdbcClient.sql("""
+                        SELECT q.ord, d.id, d.content, d.metadata, d.distance
+                        FROM unnest(CAST(:embeddings AS vector[])) WITH ORDINALITY AS q(embedding, ord)
+                        CROSS JOIN LATERAL (
+                            SELECT id, content, metadata::text AS metadata, embedding <=> q.embedding AS distance
+                            FROM vector_store
+                            WHERE collection = :collection
+                            ORDER BY embedding <=> q.embedding
+                            LIMIT :topK
+                        ) d
+                        ORDER BY q.ord, d.distance
+                        """)
+                .param("embeddings", embeddings)
+                .param("collection", collection)
+                .param("topK", topK)
+                .query(rs -> {
+                    while (rs.next()) {
+                        results.get(offset + rs.getInt("ord") - 1).add(new RetrievedDocument(
+                                rs.getString("id"),
+                                collection,
+                                rs.getString("content"),
+                                fromJson(rs.getString("metadata")),
+                                1 - rs.getDouble("distance")));
+                    }
+                    return results;
+                });
+    }
+
+    /**
+     * Text form of a {@code vector}, e.g. {@code [0.1,0.2]}.
+     */
+    static String toVectorLiteral(float[] embedding) {
+
+        StringBuilder literal = new StringBuilder(embedding.length * 12);
+        appendVector(literal, embedding);
+        return literal.toString();
+    }
+
+    /**
+     * Text form of a {@code vector[]}, e.g. <code>{"[0.1,0.2]","[0.3,0.4]"}</code>.
+     */
+    static String toArrayLiteral(List<float[]> embeddings) {
+
+        StringBuilder literal = new StringBuilder(embeddings.size() * embeddings.getFirst().length * 12);
+        literal.append('{');
+        for (int i = 0; i < embeddings.size(); i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append('"');
+            appendVector(literal, embeddings.get(i));
+            literal.append('"');
+        }
+        return literal.append('}').toString();
+    }
+
+    private static void appendVector(StringBuilder literal, float[] embedding) {
+
+        literal.append('[');
+        for (int j = 0; j < embedding.length; j++) {
+            if (j > 0) {
+                literal.append(',');
+            }
+            literal.append(embedding[j]);
+        }
+        literal.append(']');
+    }
+
+    private Map<String, Object> fromJson(String metadata) {
+
+        if (metadata == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(metadata, new TypeReference<>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to read document metadata", e);
+        }
+    }
+}
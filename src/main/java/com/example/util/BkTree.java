@@ -0,0 +1,117 @@
+package com.example.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * BK-tree over 64-bit hashes using the Hamming distance. Finds the closest stored hash within a
+ * distance without comparing against every entry.
+ */
+public class BkTree<V> {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node<V> root;
+    private int size;
+
+    public static int distance(long a, long b) {
+
+        return Long.bitCount(a ^ b);
+    }
+
+    public void add(long key, V value) {
+
+        lock.writeLock().lock();
+        try {
+            if (root == null) {
+                root = new Node<>(key, value);
+                size++;
+                return;
+            }
+
+            Node<V> node = root;
+            while (true) {
+                int d = distance(key, node.key);
+                if (d == 0) {
+                    node.value = value;
+                    return;
+                }
+                Node<V> child = node.children.get(d);
+                if (child == null) {
+                    node.children.put(d, new Node<>(key, value));
+                    size++;
+                    return;
+                }
+                node = child;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Optional<Match<V>> nearest(long key, int maxDistance) {
+
+        lock.readLock().lock();
+        try {
+            if (root == null) {
+                return Optional.empty();
+            }
+
+            Match<V> best = null;
+            int radius = maxDistance;
+            Deque<Node<V>> pending = new ArrayDeque<>();
+            pending.push(root);
+
+            while (!pending.isEmpty()) {
+                Node<V> node = pending.pop();
+                int d = distance(key, node.key);
+                if (d <= radius) {
+                    best = new Match<>(node.key, node.value, d);
+                    radius = d;
+                    if (d == 0) {
+                        break;
+                    }
+                }
+                // Triangle inequality: only children at distance d +/- radius can be closer than the current best
+                for (Map.Entry<Integer, Node<V>> child : node.children.entrySet()) {
+                    if (Math.abs(child.getKey() - d) <= radius) {
+                        pending.push(child.getValue());
+                    }
+                }
+            }
+            return Optional.ofNullable(best);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public record Match<V>(long key, V value, int distance) {
+    }
+
+    private static final class Node<V> {
+
+        private final long key;
+        private final Map<Integer, Node<V>> children = new HashMap<>();
+        private V value;
+
+        private Node(long key, V value) {
+
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.OptionalLong;
+
+/**
+ * Difference hash (dHash): the image is reduced to 9x8 grayscale cells and every bit records whether a
+ * cell is brighter than its right neighbour. Resized or re-encoded copies of an image end up within a
+ * few bits of each other.
+ */
+public final class PerceptualHash {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+    // Decoding at a fraction of the full resolution is plenty for a 9x8 thumbnail, much coarser subsampling
+    // skips enough pixels to alias fine detail and moves the hash between sizes of the same image
+    private static final int MIN_DECODED_SIDE = 256;
+    private static final int MAX_DECODED_PIXELS = 1 << 22;
+
+    private PerceptualHash() {
+    }
+
+    public static OptionalLong dHash(byte[] data) {
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            if (input == null) {
+                return OptionalLong.empty();
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return OptionalLong.empty();
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int shortest = Math.min(reader.getWidth(0), reader.getHeight(0));
+                // Also bounded by area, so a long narrow image declaring a huge size is not decoded in full
+                double area = (double) reader.getWidth(0) * reader.getHeight(0);
+                int subsampling = Math.max(Math.max(1, shortest / MIN_DECODED_SIDE),
+                        (int) Math.ceil(Math.sqrt(area / MAX_DECODED_PIXELS)));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return OptionalLong.of(dHash(reader.read(0, param)));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    public static long dHash(BufferedImage image) {
+
+        double[][] thumbnail = thumbnail(image);
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                hash = (hash << 1) | (thumbnail[y][x] > thumbnail[y][x + 1] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Mean luminance of each of the 9x8 cells. Averaging every pixel of a cell keeps the hash stable across
+     * sizes, interpolated scaling samples only a few pixels per cell when shrinking this far.
+     */
+    private static double[][] thumbnail(BufferedImage image) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[][] sums = new double[HASH_HEIGHT][HASH_WIDTH];
+        int[][] counts = new int[HASH_HEIGHT][HASH_WIDTH];
+        int[] row = new int[width];
+
+        for (int y = 0; y < height; y++) {
+            int cellY = y * HASH_HEIGHT / height;
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int cellX = x * HASH_WIDTH / width;
+                int rgb = row[x];
+                sums[cellY][cellX] += 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+                counts[cellY][cellX]++;
+            }
+        }
+
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH; x++) {
+                sums[y][x] = counts[y][x] > 0 ? sums[y][x] / counts[y][x] : 0;
+            }
+        }
+        return sums;
+    }
+}
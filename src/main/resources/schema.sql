@@ -3,10 +3,63 @@ CREATE EXTENSION IF NOT EXISTS hstore;
 CREATE EXTENSION IF NOT EXISTS "uuid-ossp";
 
 CREATE TABLE IF NOT EXISTS vector_store (
-	id uuid DEFAULT uuid_generate_v4() PRIMARY KEY,
+	id uuid DEFAULT uuid_generate_v4(),
+	collection varchar(48) NOT NULL,
 	content text,
 	metadata json,
-	embedding vector(1536) -- 1536 is the default embedding dimension
+	embedding vector(1536), -- 1536 is the default embedding dimension
+	CONSTRAINT vector_store_collection_pkey PRIMARY KEY (collection, id)
+) PARTITION BY LIST (collection);
+
+-- One vector_store partition per collection, each with its own HNSW index, created on first ingestion
+CREATE TABLE IF NOT EXISTS vector_collection (
+	name varchar(48) PRIMARY KEY,
+	created_at timestamptz NOT NULL DEFAULT now()
+);
+
+CREATE TABLE IF NOT EXISTS ai_job (
+	id uuid PRIMARY KEY,
+	type varchar(32) NOT NULL,
+	status varchar(16) NOT NULL,
+	priority int NOT NULL DEFAULT 0,
+	params json,
+	payload bytea, -- uploaded input (e.g. audio) kept until the job finishes
+	result text,
+	error text,
+	callback_url text,
+	created_at timestamptz NOT NULL DEFAULT now(),
+	updated_at timestamptz NOT NULL DEFAULT now()
+);
+
+ALTER TABLE ai_job ADD COLUMN IF NOT EXISTS owner uuid; -- instance holding the job while RUNNING, renewed through updated_at
+
+CREATE INDEX IF NOT EXISTS ai_job_status_idx ON ai_job (status);
+
+CREATE TABLE IF NOT EXISTS image_description (
+	id bigserial PRIMARY KEY,
+	phash bigint NOT NULL, -- 64-bit dHash of the described image
+	description text NOT NULL,
+	created_at timestamptz NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS image_description_created_at_idx ON image_description (created_at);
+
+CREATE TABLE IF NOT EXISTS conversation (
+	id varchar(64) PRIMARY KEY,
+	summary text, -- rolling summary of the turns up to summarized_until
+	summarized_until bigint NOT NULL DEFAULT 0,
+	created_at timestamptz NOT NULL DEFAULT now(),
+	updated_at timestamptz NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS conversation_updated_at_idx ON conversation (updated_at);
+
+CREATE TABLE IF NOT EXISTS conversation_message (
+	id bigserial PRIMARY KEY,
+	conversation_id varchar(64) NOT NULL REFERENCES conversation (id) ON DELETE CASCADE,
+	role varchar(16) NOT NULL,
+	content text NOT NULL,
+	created_at timestamptz NOT NULL DEFAULT now()
 );
 
-CREATE INDEX ON vector_store USING HNSW (embedding vector_cosine_ops);
+CREATE INDEX IF NOT EXISTS conversation_message_conversation_idx ON conversation_message (conversation_id, id);
@@ -0,0 +1,191 @@
+package com.example.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class AdmissionLimiterTests {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+	@Test
+	void successesGrowTheLimitByOnePerRoundTrip() {
+
+		AdmissionLimiter limiter = limiter(4, 100, 1000.0);
+
+		for (int i = 0; i < 4; i++) {
+			limiter.acquire(1, TIMEOUT).release(200, null);
+		}
+
+		// Each success adds 1 / limit, so a full window of successes adds about one
+		assertThat(limiter.limit()).isCloseTo(4.95, within(0.05));
+	}
+
+	@Test
+	void limitNeverExceedsMaxConcurrency() {
+
+		AdmissionLimiter limiter = limiter(2, 3, 1000.0);
+
+		for (int i = 0; i < 50; i++) {
+			limiter.acquire(1, TIMEOUT).release(200, null);
+		}
+
+		assertThat(limiter.limit()).isEqualTo(3.0);
+	}
+
+	@Test
+	void throttlingHalvesTheLimitAndPausesAdmission() {
+
+		AdmissionLimiter limiter = limiter(8, 100, 1000.0);
+
+		limiter.acquire(1, TIMEOUT).release(429, Duration.ofSeconds(30));
+
+		assertThat(limiter.limit()).isEqualTo(4.0);
+		assertThatThrownBy(() -> limiter.acquire(1, Duration.ofMillis(100)))
+				.isInstanceOfSatisfying(AdmissionRejectedException.class,
+						e -> assertThat(e.getRetryAfter()).isGreaterThan(Duration.ofSeconds(25)));
+	}
+
+	@Test
+	void throttlingNeverDropsTheLimitBelowOne() {
+
+		AdmissionLimiter limiter = limiter(1, 100, 1000.0);
+
+		limiter.acquire(1, TIMEOUT).release(429, Duration.ZERO);
+		limiter.acquire(1, TIMEOUT).release(429, Duration.ZERO);
+
+		assertThat(limiter.limit()).isEqualTo(1.0);
+	}
+
+	@Test
+	void slowResponsesShrinkTheLimitOncePerRoundTrip() throws InterruptedException {
+
+		AdmissionLimiter limiter = limiter(10, 100, 2.0);
+		AdmissionLimiter.Permit baseline = limiter.acquire(1, TIMEOUT);
+		Thread.sleep(5);
+		baseline.release(200, null);
+		double afterBaseline = limiter.limit();
+
+		AdmissionLimiter.Permit first = limiter.acquire(1, TIMEOUT);
+		AdmissionLimiter.Permit second = limiter.acquire(1, TIMEOUT);
+		Thread.sleep(100);
+		first.release(200, null);
+		second.release(200, null);
+
+		// The second slow response lands within the same round trip and leaves the limit alone
+		assertThat(limiter.limit()).isCloseTo(afterBaseline * 0.9, within(1e-9));
+	}
+
+	@Test
+	void failuresWithoutResponseShrinkTheLimit() {
+
+		AdmissionLimiter limiter = limiter(10, 100, 1000.0);
+
+		limiter.acquire(1, TIMEOUT).release(-1, null);
+
+		assertThat(limiter.limit()).isCloseTo(9.0, within(1e-9));
+	}
+
+	@Test
+	void serverErrorsLeaveTheLimitUnchanged() {
+
+		AdmissionLimiter limiter = limiter(5, 100, 1000.0);
+
+		limiter.acquire(1, TIMEOUT).release(500, null);
+
+		assertThat(limiter.limit()).isEqualTo(5.0);
+	}
+
+	@Test
+	void cancelledRequestsFreeTheirSlotAndLeaveTheLimitUnchanged() {
+
+		AdmissionLimiter limiter = limiter(1, 1, 1000.0);
+
+		limiter.acquire(1, TIMEOUT).cancel();
+
+		assertThat(limiter.limit()).isEqualTo(1.0);
+		assertThat(limiter.acquire(1, Duration.ofMillis(100))).isNotNull();
+	}
+
+	@Test
+	void requestsBeyondTheConcurrencyLimitWaitAndThenGiveUp() {
+
+		AdmissionLimiter limiter = limiter(1, 1, 1000.0);
+		AdmissionLimiter.Permit held = limiter.acquire(1, TIMEOUT);
+
+		long start = System.nanoTime();
+		assertThatThrownBy(() -> limiter.acquire(1, Duration.ofMillis(100)))
+				.isInstanceOf(AdmissionRejectedException.class)
+				.hasMessageContaining("concurrency limit");
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(90));
+
+		held.release(200, null);
+		assertThat(limiter.acquire(1, TIMEOUT)).isNotNull();
+	}
+
+	@Test
+	void tokenBucketRefillsAtItsRate() {
+		// 10 tokens per millisecond, a 100 ms burst holds 1000
+		AdmissionLimiter limiter = new AdmissionLimiter("test", 0, 600_000, Duration.ofMillis(100),
+				100, 100, 100, 1000.0);
+		long drained = System.nanoTime();
+		limiter.acquire(1000, TIMEOUT).release(200, null);
+
+		// Empty now, and 1000 tokens take 100 ms to come back, so a shorter deadline is shed right away
+		long start = System.nanoTime();
+		assertThatThrownBy(() -> limiter.acquire(1000, Duration.ofMillis(20)))
+				.isInstanceOf(AdmissionRejectedException.class)
+				.hasMessageContaining("rate limit");
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(20));
+
+		// Measured from the drain, refilling starts then however long the calls above took
+		limiter.acquire(1000, TIMEOUT).release(200, null);
+		assertThat(Duration.ofNanos(System.nanoTime() - drained)).isGreaterThanOrEqualTo(Duration.ofMillis(95));
+	}
+
+	@Test
+	void requestBucketRefillsAtItsRate() {
+		// One request per 10 ms, a 20 ms burst holds two
+		long start = System.nanoTime();
+		AdmissionLimiter limiter = new AdmissionLimiter("test", 6000, 0, Duration.ofMillis(20),
+				100, 100, 100, 1000.0);
+		limiter.acquire(1, TIMEOUT).release(200, null);
+		limiter.acquire(1, TIMEOUT).release(200, null);
+
+		// The bucket fills from its creation, the third request waits until 10 ms after it
+		limiter.acquire(1, TIMEOUT).release(200, null);
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(9));
+	}
+
+	@Test
+	void requestsLargerThanTheBurstRunOnceTheBucketIsFull() {
+
+		AdmissionLimiter limiter = new AdmissionLimiter("test", 0, 600_000, Duration.ofMillis(100),
+				100, 100, 100, 1000.0);
+
+		assertThat(limiter.acquire(50_000, Duration.ofMillis(10))).isNotNull();
+	}
+
+	@Test
+	void shedsWhenTheQueueIsFull() {
+
+		AdmissionLimiter limiter = new AdmissionLimiter("test", 0, 0, Duration.ofSeconds(1),
+				1, 1, 0, 1000.0);
+		// Without a line, only callers that would have to wait are shed
+		limiter.acquire(1, TIMEOUT);
+
+		assertThatThrownBy(() -> limiter.acquire(1, TIMEOUT))
+				.isInstanceOf(AdmissionRejectedException.class)
+				.hasMessageContaining("queue full");
+	}
+
+	private static AdmissionLimiter limiter(int initialConcurrency, int maxConcurrency, double latencyTolerance) {
+
+		return new AdmissionLimiter("test", 0, 0, Duration.ofSeconds(1),
+				initialConcurrency, maxConcurrency, 100, latencyTolerance);
+	}
+}
@@ -0,0 +1,35 @@
+package com.example.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpenAiEndpointTests {
+
+	private static final URI BASE_URL = URI.create("https://api.openai.com");
+
+	@Test
+	void recognisesTheApiFromThePath() {
+
+		assertThat(endpoint("https://api.openai.com/v1/chat/completions")).isEqualTo(OpenAiEndpoint.CHAT);
+		assertThat(endpoint("https://API.openai.com/v1/embeddings")).isEqualTo(OpenAiEndpoint.EMBEDDING);
+		assertThat(endpoint("https://api.openai.com/v1/audio/translations")).isEqualTo(OpenAiEndpoint.TRANSCRIPTION);
+		assertThat(endpoint("https://api.openai.com/v1/images/generations")).isEqualTo(OpenAiEndpoint.IMAGE);
+		assertThat(endpoint("https://api.openai.com/v1/models")).isEqualTo(OpenAiEndpoint.OTHER);
+	}
+
+	@Test
+	void otherHostsAreNeverModelCalls() {
+
+		assertThat(endpoint("https://hooks.example.com/v1/chat/completions")).isEqualTo(OpenAiEndpoint.OTHER);
+		assertThat(endpoint("https://oaidalleapiprodscus.blob.core.windows.net/images/img-1.png"))
+				.isEqualTo(OpenAiEndpoint.OTHER);
+	}
+
+	private static OpenAiEndpoint endpoint(String uri) {
+
+		return OpenAiEndpoint.of(URI.create(uri), BASE_URL);
+	}
+}
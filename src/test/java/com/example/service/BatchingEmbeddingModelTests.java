@@ -0,0 +1,128 @@
+package com.example.service;
+
+import com.example.metrics.AiMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchingEmbeddingModelTests {
+
+	private final OpenAiEmbeddingModel delegate = mock(OpenAiEmbeddingModel.class);
+	// A thread per caller, each one blocks until its batch is sent
+	private final ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+	private BatchingEmbeddingModel model;
+
+	@AfterEach
+	void shutdown() {
+
+		model.shutdown();
+		callers.shutdownNow();
+	}
+
+	@Test
+	void identicalTextsInABatchAreEmbeddedOnce() {
+
+		// Answers out of order, the vectors are matched to the texts by index
+		when(delegate.call(any())).thenAnswer(invocation -> {
+			List<String> texts = invocation.<EmbeddingRequest>getArgument(0).getInstructions();
+			List<Embedding> results = new ArrayList<>();
+			for (int i = texts.size() - 1; i >= 0; i--) {
+				results.add(new Embedding(vector(texts.get(i)), i));
+			}
+			return new EmbeddingResponse(results);
+		});
+		model = model(4, Duration.ofSeconds(10));
+
+		String[] texts = {"apples", "pears", "apples", "plums"};
+
+		List<CompletableFuture<float[]>> vectors = embedConcurrently(texts);
+
+		for (int i = 0; i < texts.length; i++) {
+			assertThat(vectors.get(i).join()).containsExactly(vector(texts[i]));
+		}
+		ArgumentCaptor<EmbeddingRequest> request = ArgumentCaptor.forClass(EmbeddingRequest.class);
+		verify(delegate).call(request.capture());
+		assertThat(request.getValue().getInstructions()).containsExactlyInAnyOrder("apples", "pears", "plums");
+	}
+
+	@Test
+	void aFailedRequestFailsEveryCallerOfTheBatch() {
+
+		IllegalStateException failure = new IllegalStateException("rate limited");
+		when(delegate.call(any())).thenThrow(failure);
+		model = model(3, Duration.ofSeconds(10));
+
+		List<CompletableFuture<float[]>> vectors = embedConcurrently("apples", "pears", "plums");
+
+		for (CompletableFuture<float[]> vector : vectors) {
+			assertThatThrownBy(vector::join).isInstanceOf(CompletionException.class).hasCause(failure);
+		}
+		verify(delegate, never()).embed(any(String.class));
+	}
+
+	@Test
+	void shutdownFailsCallersStillWaitingForABatch() throws Exception {
+
+		// The batch never fills and its wait outlasts the test, only the shutdown can end it
+		model = model(64, Duration.ofMinutes(1));
+		CompletableFuture<float[]> vector = CompletableFuture.supplyAsync(() -> model.embed("apples"), callers);
+		while (!vector.isDone() && Thread.getAllStackTraces().keySet().stream()
+				.noneMatch(thread -> thread.getName().equals("embedding-batcher")
+						&& thread.getState() == Thread.State.TIMED_WAITING)) {
+			Thread.onSpinWait();
+		}
+
+		model.shutdown();
+
+		assertThatThrownBy(() -> vector.get(5, TimeUnit.SECONDS))
+				.hasCauseInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("shut down");
+		verify(delegate, never()).call(any());
+	}
+
+	private BatchingEmbeddingModel model(int maxSize, Duration maxWait) {
+
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		return new BatchingEmbeddingModel(delegate, new AiMetrics(meterRegistry), meterRegistry,
+				"text-embedding-3-small", true, maxSize, maxWait, Duration.ofSeconds(30), 100);
+	}
+
+	/**
+	 * Embeds the texts concurrently, a batch of {@code texts.length} is sent once all of them are queued.
+	 */
+	private List<CompletableFuture<float[]>> embedConcurrently(String... texts) {
+
+		List<CompletableFuture<float[]>> vectors = new ArrayList<>();
+		for (String text : texts) {
+			vectors.add(CompletableFuture.supplyAsync(() -> model.embed(text), callers));
+		}
+		return vectors;
+	}
+
+	private static float[] vector(String text) {
+
+		return new float[]{text.length(), text.charAt(0)};
+	}
+}
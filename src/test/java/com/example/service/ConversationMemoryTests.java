@@ -0,0 +1,182 @@
+package com.example.service;
+
+import com.example.model.ConversationState;
+import com.example.model.ConversationTurn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConversationMemoryTests {
+
+	private static final String SUMMARY = "The user asked about apples and pears.";
+
+	// Every message the same size, so budgets can be given in turns
+	private static final int TURN_TOKENS = new JTokkitTokenCountEstimator().estimate(text(0));
+
+	private final ConversationRepository repository = mock(ConversationRepository.class);
+	private final ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+	private final ChatClient.Builder builder = mock(ChatClient.Builder.class);
+	private ConversationMemory memory;
+	private int messages;
+
+	@BeforeEach
+	void stubCollaborators() {
+
+		AtomicLong ids = new AtomicLong();
+		when(repository.append(anyString(), anyString(), anyString())).thenAnswer(invocation -> ids.incrementAndGet());
+		when(builder.build()).thenReturn(chatClient);
+		when(chatClient.prompt(anyString()).options(any()).call().content()).thenReturn(SUMMARY);
+	}
+
+	@AfterEach
+	void shutdown() {
+
+		if (memory != null) {
+			memory.shutdown();
+		}
+	}
+
+	@Test
+	void onlyTheMostRecentTurnsThatFitAreSent() {
+
+		memory = memory(4, 100, 10);
+		exchanges("c", 3);
+
+		assertThat(texts(memory.get("c"))).containsExactly(text(2), text(3), text(4), text(5));
+	}
+
+	@Test
+	void anAnswerWhoseQuestionFellOutOfTheWindowIsDropped() {
+
+		memory = memory(3, 100, 10);
+		exchanges("c", 3);
+
+		List<Message> history = memory.get("c");
+
+		assertThat(texts(history)).containsExactly(text(4), text(5));
+		assertThat(history.getFirst()).isInstanceOf(UserMessage.class);
+	}
+
+	@Test
+	void olderTurnsAreFoldedIntoTheSummary() {
+
+		memory = memory(4, 5, 10);
+		exchanges("c", 2);
+		verify(repository, never()).saveSummary(anyString(), anyString(), anyLong());
+
+		exchanges("c", 1);
+
+		// Folded until half the history budget is left, the first two exchanges with ids 1 to 4
+		verify(repository, timeout(5000)).saveSummary("c", SUMMARY, 4);
+		verify(chatClient).prompt(contains(text(3)));
+		List<Message> history = awaitSummary("c");
+		assertThat(history.getFirst().getText()).endsWith(SUMMARY);
+		assertThat(texts(history.subList(1, history.size()))).containsExactly(text(4), text(5));
+	}
+
+	@Test
+	void aStoredSummaryIsLoadedWithTheTurnsAfterIt() {
+
+		memory = memory(4, 100, 10);
+		when(repository.find(eq("c"), anyInt())).thenReturn(Optional.of(new ConversationState(SUMMARY, 4, List.of(
+				new ConversationTurn(5, "user", text(4)),
+				new ConversationTurn(6, "assistant", text(5))))));
+
+		List<Message> history = memory.get("c");
+
+		assertThat(history).hasSize(3);
+		assertThat(history.getFirst()).isInstanceOf(SystemMessage.class);
+		assertThat(history.getFirst().getText()).endsWith(SUMMARY);
+		assertThat(texts(history.subList(1, 3))).containsExactly(text(4), text(5));
+	}
+
+	@Test
+	void leastRecentlyUsedSessionsAreEvictedAndReloaded() {
+
+		memory = memory(4, 100, 1);
+		memory.get("first");
+		memory.get("second");
+
+		memory.evictIdleSessions();
+		memory.get("second");
+		memory.get("first");
+
+		verify(repository, times(1)).find(eq("second"), anyInt());
+		verify(repository, times(2)).find(eq("first"), anyInt());
+	}
+
+	@Test
+	void clearForgetsTheConversation() {
+
+		memory = memory(4, 100, 10);
+		exchanges("c", 1);
+
+		memory.clear("c");
+
+		verify(repository).delete("c");
+		assertThat(memory.get("c")).isEmpty();
+	}
+
+	private ConversationMemory memory(int historyTurns, int triggerTurns, int maxSessions) {
+
+		return new ConversationMemory(repository, builder, "small", historyTurns * TURN_TOKENS,
+				triggerTurns * TURN_TOKENS, 50, 50, Duration.ofMinutes(30), maxSessions, Duration.ofDays(30), 1, 10);
+	}
+
+	/**
+	 * Adds question and answer pairs, message {@code i} of the conversation reads {@link #text(int) text(i)}.
+	 */
+	private void exchanges(String conversationId, int count) {
+
+		for (int i = 0; i < count; i++) {
+			memory.add(conversationId, List.of(new UserMessage(text(messages++)), new AssistantMessage(text(messages++))));
+		}
+	}
+
+	private List<Message> awaitSummary(String conversationId) {
+
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		List<Message> history = memory.get(conversationId);
+		while (!(history.getFirst() instanceof SystemMessage) && System.nanoTime() < deadline) {
+			Thread.onSpinWait();
+			history = memory.get(conversationId);
+		}
+		return history;
+	}
+
+	private static List<String> texts(List<Message> messages) {
+
+		return messages.stream().map(Message::getText).toList();
+	}
+
+	private static String text(int index) {
+
+		return "message %02d about apples".formatted(index);
+	}
+}
@@ -0,0 +1,133 @@
+package com.example.service;
+
+import com.example.model.BatchSearchResult;
+import com.example.model.RetrievedDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HotQuestionWarmerTests {
+
+	private static final int TOP_N = 2;
+
+	private final BatchRetrievalService batchRetrievalService = mock(BatchRetrievalService.class);
+	// Stubbed deeply so the vector store version query returns no rows unless a test stubs it
+	private final JdbcClient jdbcClient = mock(JdbcClient.class, RETURNS_DEEP_STUBS);
+
+	@BeforeEach
+	void answerEveryQuestion() {
+
+		when(batchRetrievalService.search(anyList(), anyInt(), any())).thenAnswer(invocation -> {
+			List<String> questions = invocation.getArgument(0);
+			return questions.stream()
+					.map(question -> new BatchSearchResult(question, List.of(
+							new RetrievedDocument("id", "constitution", "about " + question, Map.of(), 0.9))))
+					.toList();
+		});
+	}
+
+	@Test
+	void trimmingKeepsTheMostFrequentQuestions() {
+
+		HotQuestionWarmer warmer = warmer(1);
+		ask(warmer, "What is the form of government?", 6);
+		ask(warmer, "Who elects the president?", 5);
+		// Enough once-asked questions to trim the candidates several times over
+		for (int i = 0; i < 10 * TOP_N; i++) {
+			ask(warmer, "Rare question " + i, 1);
+		}
+
+		warmer.refresh();
+
+		assertThat(searchedQuestions()).containsExactlyInAnyOrder(
+				"What is the form of government?", "Who elects the president?");
+		assertThat(warmer.lookup("what is the   form of government?", null)).isPresent();
+		assertThat(warmer.lookup("Rare question 3", null)).isEmpty();
+	}
+
+	@Test
+	void questionsBelowTheMinimumCountAreNotWarmed() {
+
+		HotQuestionWarmer warmer = warmer(3);
+		ask(warmer, "What is the form of government?", 2);
+
+		warmer.refresh();
+
+		verify(batchRetrievalService, never()).search(anyList(), anyInt(), any());
+	}
+
+	@Test
+	void decayDropsQuestionsThatWentCold() {
+
+		HotQuestionWarmer warmer = warmer(3);
+		ask(warmer, "What is the form of government?", 4);
+
+		warmer.decay();
+		warmer.refresh();
+
+		verify(batchRetrievalService, never()).search(anyList(), anyInt(), any());
+	}
+
+	@Test
+	void warmQuestionsAreSearchedAgainOnceTheStoreChanges() {
+
+		when(jdbcClient.sql(anyString()).query(String.class).list())
+				.thenReturn(List.of("16384:16384:50"), List.of("16384:16384:50"), List.of("16384:16384:75"));
+		HotQuestionWarmer warmer = warmer(1);
+		ask(warmer, "What is the form of government?", 3);
+		ask(warmer, "Who elects the president?", 2);
+
+		warmer.refresh();
+		// Nothing changed, the warm results are still current
+		warmer.refresh();
+		verify(batchRetrievalService, times(1)).search(anyList(), anyInt(), any());
+
+		warmer.refresh();
+
+		List<List<String>> searches = searchedQuestions(2);
+		assertThat(searches.get(1)).containsExactlyInAnyOrderElementsOf(searches.get(0))
+				.containsExactlyInAnyOrder("What is the form of government?", "Who elects the president?");
+	}
+
+	private HotQuestionWarmer warmer(long minCount) {
+
+		return new HotQuestionWarmer(batchRetrievalService, jdbcClient, true, TOP_N, minCount, 4, 1024);
+	}
+
+	private static void ask(HotQuestionWarmer warmer, String question, int times) {
+
+		for (int i = 0; i < times; i++) {
+			warmer.lookup(question, null);
+		}
+	}
+
+	private List<String> searchedQuestions() {
+
+		return searchedQuestions(1).getFirst();
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<List<String>> searchedQuestions(int searches) {
+
+		ArgumentCaptor<List<String>> questions = ArgumentCaptor.forClass(List.class);
+		verify(batchRetrievalService, times(searches)).search(questions.capture(), anyInt(), isNull());
+		return questions.getAllValues();
+	}
+}
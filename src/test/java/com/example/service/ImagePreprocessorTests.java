@@ -0,0 +1,84 @@
+package com.example.service;
+
+import com.example.model.PreprocessedImage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImagePreprocessorTests {
+
+	private final ImagePreprocessor preprocessor = new ImagePreprocessor(1024, 1_000_000, 0.85f, 1, 4);
+
+	@AfterEach
+	void shutdown() {
+
+		preprocessor.shutdown();
+	}
+
+	@Test
+	void rejectsImagesDeclaringTooManyPixelsBeforeDecoding() throws IOException {
+
+		byte[] png = encode(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png");
+		// IHDR width and height, the file stays tiny but claims 50000x50000 pixels
+		ByteBuffer.wrap(png).putInt(16, 50_000).putInt(20, 50_000);
+
+		assertThatThrownBy(() -> preprocessor.preprocess(png, MimeTypeUtils.IMAGE_PNG))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("50000x50000");
+	}
+
+	@Test
+	void smallPhotosAreSentWithoutTheirMetadata() throws IOException {
+
+		// Noise saved at the default quality, which grows when re-encoded at 0.85
+		BufferedImage noise = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(1);
+		for (int y = 0; y < noise.getHeight(); y++) {
+			for (int x = 0; x < noise.getWidth(); x++) {
+				noise.setRGB(x, y, random.nextInt(0x1000000));
+			}
+		}
+		byte[] jpeg = withExif(encode(noise, "jpeg"));
+
+		PreprocessedImage result = preprocessor.preprocess(jpeg, MimeTypeUtils.IMAGE_JPEG);
+
+		assertThat(result.mimeType()).isEqualTo(MimeTypeUtils.IMAGE_JPEG);
+		assertThat(new String(result.data(), StandardCharsets.ISO_8859_1)).doesNotContain("Exif", "GPS secret");
+		assertThat(ImageIO.read(new ByteArrayInputStream(result.data())).getWidth()).isEqualTo(64);
+	}
+
+	private static byte[] encode(BufferedImage image, String format) throws IOException {
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(image, format, output);
+		return output.toByteArray();
+	}
+
+	/**
+	 * Inserts an APP1 Exif segment with some text standing in for GPS data after the SOI marker.
+	 */
+	private static byte[] withExif(byte[] jpeg) {
+
+		byte[] payload = "Exif\0\0II*\0\u0008\0\0\0\0\0GPS secret".getBytes(StandardCharsets.ISO_8859_1);
+		ByteBuffer segment = ByteBuffer.allocate(4 + payload.length);
+		segment.put((byte) 0xFF).put((byte) 0xE1).putShort((short) (2 + payload.length)).put(payload);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		output.write(jpeg, 0, 2);
+		output.writeBytes(segment.array());
+		output.write(jpeg, 2, jpeg.length - 2);
+		return output.toByteArray();
+	}
+}
@@ -0,0 +1,67 @@
+package com.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ModelRouterTests {
+
+	private static final String SMALL = "gpt-4o-mini";
+	private static final String LARGE = "gpt-4o";
+
+	private final ModelRouter router = new ModelRouter(new SimpleMeterRegistry(), true, SMALL, LARGE, 2000, 0.75,
+			false, 0.95, 20, Duration.ofSeconds(2));
+
+	@AfterEach
+	void shutdown() {
+
+		router.shutdown();
+	}
+
+	@Test
+	void transientFailuresFallBackToTheOtherModel() {
+
+		assertThat(callFailingOnSmall(new TransientAiException("502 - Bad Gateway"))).isEqualTo(LARGE);
+		assertThat(callFailingOnSmall(new ResourceAccessException("Read timed out"))).isEqualTo(LARGE);
+		assertThat(callFailingOnSmall(HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests",
+				null, null, null))).isEqualTo(LARGE);
+	}
+
+	@Test
+	void otherFailuresAreNotSentToTheOtherModel() {
+
+		NonTransientAiException badRequest = new NonTransientAiException("400 - context_length_exceeded");
+		IllegalStateException notConverted = new IllegalStateException("Unrecognized token 'Sure'");
+
+		assertThatThrownBy(() -> callFailingOnSmall(badRequest)).isSameAs(badRequest);
+		assertThatThrownBy(() -> callFailingOnSmall(notConverted)).isSameAs(notConverted);
+	}
+
+	/**
+	 * Routes a short prompt, which goes to the small model first, and returns the model that answered.
+	 */
+	private String callFailingOnSmall(RuntimeException failure) {
+
+		ModelRouter.Route route = router.route(ModelRouter.Task.FREE_FORM, "What is the capital of France?", null);
+		assertThat(route.primary()).isEqualTo(SMALL);
+		Function<ChatOptions, String> call = options -> {
+			if (options.getModel().equals(SMALL)) {
+				throw failure;
+			}
+			return options.getModel();
+		};
+		return router.call(route, ModelRouter.Task.FREE_FORM, call);
+	}
+}
@@ -0,0 +1,123 @@
+package com.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StructuralTextSplitterTests {
+
+	private static final int MAX_TOKENS = 40;
+
+	private final StructuralTextSplitter splitter = new StructuralTextSplitter(MAX_TOKENS, 8, 8,
+			"(CHAPTER|Chapter|SECTION|Section)\\s+\\S+(\\s+[\\p{Lu}\\s,]+)?",
+			"(Art\\.|Article)\\s*\\d+[a-z]?\\b.*",
+			"\\(\\d+\\)\\s.*");
+
+	@Test
+	void chunksStayWithinTheTokenBudget() {
+
+		List<Document> chunks = splitter.apply(pages());
+
+		assertThat(chunks).isNotEmpty();
+		for (Document chunk : chunks) {
+			assertThat((Integer) chunk.getMetadata().get("token_count")).isLessThanOrEqualTo(MAX_TOKENS);
+			assertThat(chunk.getText()).doesNotContain("�");
+		}
+	}
+
+	@Test
+	void offsetsPointAtTheChunkTextInThePages() {
+
+		List<Document> pages = pages();
+
+		for (Document chunk : splitter.apply(pages)) {
+			Map<String, Object> metadata = chunk.getMetadata();
+			String first = page(pages, metadata.get("page_number"));
+			String last = page(pages, metadata.get("end_page_number"));
+			int start = (Integer) metadata.get("start_offset");
+			int end = (Integer) metadata.get("end_offset");
+			String text = withoutWhitespace(chunk.getText());
+
+			if (first.equals(last)) {
+				assertThat(withoutWhitespace(first.substring(start, end))).isEqualTo(text);
+			} else {
+				assertThat(text).startsWith(withoutWhitespace(first.substring(start)));
+				assertThat(text).endsWith(withoutWhitespace(last.substring(0, end)));
+			}
+		}
+	}
+
+	@Test
+	void tokenWindowsEndBetweenCharacters() {
+
+		// No sentence breaks, and emoji that tokenise into pieces of their UTF-8 bytes
+		String sentence = "Чл 1 България е република 😀🎉 с парламентарно управление 🇧🇬 ".repeat(12).strip();
+		List<Document> pages = List.of(new Document(sentence, Map.of("page_number", 1, "file_name", "emoji.pdf")));
+
+		List<Document> chunks = new StructuralTextSplitter(MAX_TOKENS, 8, 0,
+				"(CHAPTER|SECTION)\\s+\\S+", "Article\\s*\\d+.*", "\\(\\d+\\)\\s.*").apply(pages);
+
+		assertThat(chunks).hasSizeGreaterThan(2);
+		String rebuilt = chunks.stream().map(Document::getText).collect(Collectors.joining());
+		assertThat(rebuilt.replace("\n", "")).isEqualTo(sentence);
+		for (Document chunk : chunks) {
+			int start = (Integer) chunk.getMetadata().get("start_offset");
+			int end = (Integer) chunk.getMetadata().get("end_offset");
+			assertThat(sentence.substring(start, end)).isEqualTo(chunk.getText().replace("\n", ""));
+			assertThat((Integer) chunk.getMetadata().get("token_count")).isLessThanOrEqualTo(MAX_TOKENS);
+		}
+	}
+
+	private static List<Document> pages() {
+
+		String first = """
+				CHAPTER ONE
+				FUNDAMENTAL PRINCIPLES
+
+				Art. 1. (1) Bulgaria is a republic with a parliamentary form of government.
+				(2) The entire power of the State shall derive from the people. The people shall exercise this power \
+				directly and through the bodies established by this Constitution.
+				(3) No part of the people, no political party nor any other organization, state institution or \
+				individual shall usurp the expression of the popular sovereignty.
+
+				Art. 2. (1) The Republic of Bulgaria shall be a unitary State with local self-government. No \
+				autonomous territorial formations shall exist in it.
+				""";
+		String second = """
+				(2) The territorial integrity of the Republic of Bulgaria shall be inviolable.
+
+				Art. 3. Bulgarian shall be the official language of the Republic — „официален език“ — and every \
+				citizen shall have the right to use it in all dealings with the institutions of the State without \
+				exception and without any restriction whatsoever being imposed on them by anyone at any time
+
+				CHAPTER TWO
+				FUNDAMENTAL RIGHTS AND OBLIGATIONS OF CITIZENS
+
+				Art. 25. (1) A Bulgarian citizen shall be anyone born to at least one parent holding a Bulgarian \
+				citizenship, or born on the territory of the Republic of Bulgaria.
+				""";
+		return List.of(
+				new Document(first, Map.of("page_number", 1, "file_name", "constitution.pdf")),
+				new Document(second, Map.of("page_number", 2, "file_name", "constitution.pdf")));
+	}
+
+	private static String page(List<Document> pages, Object pageNumber) {
+
+		return pages.stream()
+				.filter(page -> Objects.equals(page.getMetadata().get("page_number"), pageNumber))
+				.findFirst()
+				.orElseThrow()
+				.getText();
+	}
+
+	private static String withoutWhitespace(String text) {
+
+		return text.replaceAll("\\s+", "");
+	}
+}
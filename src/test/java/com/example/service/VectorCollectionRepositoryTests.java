@@ -0,0 +1,154 @@
+package com.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers(disabledWithoutDocker = true)
+class VectorCollectionRepositoryTests {
+
+	private static final int ROWS = 25;
+
+	@Container
+	static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+			DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"));
+
+	@Test
+	void instancesStartingTogetherMoveAnUnpartitionedVectorStoreOnce() throws Exception {
+
+		DataSource dataSource = dataSource(postgres.getJdbcUrl());
+		JdbcClient jdbcClient = JdbcClient.create(dataSource);
+		createOldLayout(jdbcClient);
+		// Run on startup before the migration, the existing vector_store is left as it is
+		new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+		CountDownLatch start = new CountDownLatch(1);
+		CompletableFuture<?>[] instances = new CompletableFuture<?>[2];
+		for (int i = 0; i < instances.length; i++) {
+			VectorCollectionRepository repository = new VectorCollectionRepository(jdbcClient, dataSource,
+					new ObjectMapper());
+			instances[i] = CompletableFuture.runAsync(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				repository.migrateUnpartitioned("constitution");
+			});
+		}
+		start.countDown();
+		CompletableFuture.allOf(instances).get();
+
+		VectorCollectionRepository repository = new VectorCollectionRepository(jdbcClient, dataSource,
+				new ObjectMapper());
+		assertThat(relationKind(jdbcClient, "vector_store")).isEqualTo("p");
+		assertThat(relationKind(jdbcClient, "vector_store_unpartitioned")).isNull();
+		assertThat(relationKind(jdbcClient, "vector_store_constitution_embedding_idx")).isEqualTo("i");
+		assertThat(repository.findNames()).containsExactly("constitution");
+		assertThat(repository.count("constitution")).isEqualTo(ROWS);
+
+		// Later starts find nothing left to move
+		repository.migrateUnpartitioned("constitution");
+		assertThat(repository.count("constitution")).isEqualTo(ROWS);
+	}
+
+	@Test
+	void savingAgainReplacesDocumentsWithTheSameId() {
+
+		// A database of its own, the migration test needs one without the partitioned table
+		DataSource dataSource = database("collection_save");
+		new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+		JdbcClient jdbcClient = JdbcClient.create(dataSource);
+		VectorCollectionRepository repository = new VectorCollectionRepository(jdbcClient, dataSource,
+				new ObjectMapper());
+
+		List<Document> documents = new ArrayList<>();
+		List<float[]> embeddings = new ArrayList<>();
+		for (int i = 0; i < ROWS * 50; i++) {
+			documents.add(new Document(UUID.randomUUID().toString(), "document " + i, Map.of("index", i)));
+			embeddings.add(embedding(i));
+		}
+		repository.save("constitution", documents, embeddings);
+
+		Document replaced = new Document(documents.get(3).getId(), "amended", Map.of("index", 3));
+		repository.save("constitution", List.of(replaced), List.of(embedding(3)));
+
+		assertThat(repository.count("constitution")).isEqualTo(ROWS * 50);
+		assertThat(jdbcClient.sql("SELECT content FROM vector_store WHERE id = :id")
+				.param("id", UUID.fromString(replaced.getId()))
+				.query(String.class)
+				.single()).isEqualTo("amended");
+	}
+
+	private static DataSource database(String name) {
+
+		JdbcClient.create(dataSource(postgres.getJdbcUrl())).sql("CREATE DATABASE " + name).update();
+		return dataSource(postgres.getJdbcUrl().replaceFirst("/" + postgres.getDatabaseName() + "(?=\\?|$)",
+				"/" + name));
+	}
+
+	private static DataSource dataSource(String url) {
+
+		return new DriverManagerDataSource(url, postgres.getUsername(), postgres.getPassword());
+	}
+
+	private static float[] embedding(int i) {
+
+		float[] embedding = new float[1536];
+		embedding[i % embedding.length] = 1;
+		return embedding;
+	}
+
+	/**
+	 * The table as {@code PgVectorStore} created it, with an HNSW index and a few rows.
+	 */
+	private static void createOldLayout(JdbcClient jdbcClient) {
+
+		jdbcClient.sql("CREATE EXTENSION IF NOT EXISTS vector").update();
+		jdbcClient.sql("CREATE EXTENSION IF NOT EXISTS \"uuid-ossp\"").update();
+		jdbcClient.sql("""
+				CREATE TABLE vector_store (
+					id uuid DEFAULT uuid_generate_v4() PRIMARY KEY,
+					content text,
+					metadata json,
+					embedding vector(1536)
+				)
+				""").update();
+		jdbcClient.sql("CREATE INDEX spring_ai_vector_index ON vector_store USING HNSW (embedding vector_cosine_ops)")
+				.update();
+		jdbcClient.sql("""
+				INSERT INTO vector_store (content, metadata, embedding)
+				SELECT 'document ' || i, '{}', array_fill(i::real, ARRAY[1536])::vector
+				FROM generate_series(1, :rows) AS i
+				""")
+				.param("rows", ROWS)
+				.update();
+	}
+
+	private static String relationKind(JdbcClient jdbcClient, String relation) {
+
+		return jdbcClient.sql("SELECT relkind::text FROM pg_class WHERE oid = to_regclass(:relation)")
+				.param("relation", relation)
+				.query(String.class)
+				.optional()
+				.orElse(null);
+	}
+}
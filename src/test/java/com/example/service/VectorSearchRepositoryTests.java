@@ -0,0 +1,135 @@
+package com.example.service;
+
+import com.example.model.RetrievedDocument;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers(disabledWithoutDocker = true)
+class VectorSearchRepositoryTests {
+
+	private static final int DIMENSIONS = 1536;
+	private static final int DOCUMENTS = 60;
+	private static final int FIRST = 50;
+
+	@Container
+	static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+			DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"));
+
+	private static VectorSearchRepository repository;
+
+	@BeforeAll
+	static void loadDocuments() {
+
+		DataSource dataSource = new DriverManagerDataSource(postgres.getJdbcUrl(), postgres.getUsername(),
+				postgres.getPassword());
+		new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+		JdbcClient jdbcClient = JdbcClient.create(dataSource);
+		ObjectMapper objectMapper = new ObjectMapper();
+
+		List<Document> documents = new ArrayList<>();
+		List<float[]> embeddings = new ArrayList<>();
+		for (int i = 0; i < DOCUMENTS; i++) {
+			documents.add(new Document(UUID.randomUUID().toString(), "document " + i, Map.of("index", i)));
+			embeddings.add(embedding(i));
+		}
+		VectorCollectionRepository collections = new VectorCollectionRepository(jdbcClient, dataSource, objectMapper);
+		collections.save("first", documents.subList(0, FIRST), embeddings.subList(0, FIRST));
+		collections.save("second", documents.subList(FIRST, DOCUMENTS), embeddings.subList(FIRST, DOCUMENTS));
+
+		repository = new VectorSearchRepository(jdbcClient, dataSource, objectMapper);
+	}
+
+	@Test
+	void resultsOfEachQueryFollowTheOrderOfTheQueries() {
+
+		List<float[]> queries = List.of(embedding(7), embedding(2), embedding(25));
+
+		List<List<RetrievedDocument>> results = repository.searchBatch(queries, 3, List.of("first"));
+
+		assertThat(results).hasSize(3);
+		assertThat(results.get(0).getFirst().content()).isEqualTo("document 7");
+		assertThat(results.get(1).getFirst().content()).isEqualTo("document 2");
+		assertThat(results.get(2).getFirst().content()).isEqualTo("document 25");
+		results.forEach(documents -> assertThat(documents)
+				.hasSize(3)
+				.isSortedAccordingTo(Comparator.comparingDouble(RetrievedDocument::score).reversed()));
+	}
+
+	@Test
+	void searchesAcrossCollectionsAreMergedPerQuery() {
+
+		List<float[]> queries = List.of(embedding(55), embedding(3));
+
+		List<List<RetrievedDocument>> results = repository.searchBatch(queries, 2, List.of("first", "second"));
+
+		assertThat(results.get(0).getFirst().content()).isEqualTo("document 55");
+		assertThat(results.get(0).getFirst().collection()).isEqualTo("second");
+		assertThat(results.get(1).getFirst().content()).isEqualTo("document 3");
+		assertThat(results.get(1).getFirst().collection()).isEqualTo("first");
+		results.forEach(documents -> assertThat(documents)
+				.hasSize(2)
+				.isSortedAccordingTo(Comparator.comparingDouble(RetrievedDocument::score).reversed()));
+	}
+
+	@Test
+	void topKBeyondTheDefaultEfSearchReturnsTopKDocuments() {
+
+		// Without raising hnsw.ef_search the index scan stops after 40 rows
+		List<List<RetrievedDocument>> results = repository.searchBatch(List.of(embedding(0), embedding(10)), FIRST,
+				List.of("first"));
+
+		assertThat(results.get(0)).hasSize(FIRST);
+		assertThat(results.get(0).getFirst().content()).isEqualTo("document 0");
+		assertThat(results.get(1)).hasSize(FIRST);
+		assertThat(results.get(1).getFirst().content()).isEqualTo("document 10");
+	}
+
+	@Test
+	void largeBatchesAreSplitWithoutMixingUpTheQueries() {
+
+		List<float[]> queries = new ArrayList<>();
+		for (int i = 0; i < VectorSearchRepository.QUERIES_PER_STATEMENT + 3; i++) {
+			queries.add(embedding(i % FIRST));
+		}
+
+		List<List<RetrievedDocument>> results = repository.searchBatch(queries, 2, List.of("first"));
+
+		assertThat(results).hasSize(queries.size());
+		for (int i = 0; i < queries.size(); i++) {
+			assertThat(results.get(i)).hasSize(2);
+			assertThat(results.get(i).getFirst().content()).isEqualTo("document " + i % FIRST);
+		}
+	}
+
+	/**
+	 * Mostly along the first axis, tilted towards an axis of its own, so every document has a distinct
+	 * nearest neighbour and distances to the others vary.
+	 */
+	private static float[] embedding(int index) {
+
+		float[] embedding = new float[DIMENSIONS];
+		embedding[0] = 1;
+		embedding[1 + index] = 2;
+		embedding[1 + (index + 1) % DOCUMENTS] = 0.5f;
+		return embedding;
+	}
+}
@@ -0,0 +1,81 @@
+package com.example.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BkTreeTests {
+
+	@Test
+	void emptyTreeFindsNothing() {
+
+		assertThat(new BkTree<String>().nearest(0L, 64)).isEmpty();
+	}
+
+	@Test
+	void findsExactMatch() {
+
+		BkTree<String> tree = new BkTree<>();
+		tree.add(0b1010L, "a");
+		tree.add(0b0101L, "b");
+
+		assertThat(tree.nearest(0b0101L, 0)).hasValueSatisfying(match -> {
+			assertThat(match.value()).isEqualTo("b");
+			assertThat(match.distance()).isZero();
+		});
+	}
+
+	@Test
+	void respectsMaxDistance() {
+
+		BkTree<String> tree = new BkTree<>();
+		tree.add(0L, "zero");
+
+		assertThat(tree.nearest(0b111L, 2)).isEmpty();
+		assertThat(tree.nearest(0b111L, 3)).hasValueSatisfying(match -> assertThat(match.distance()).isEqualTo(3));
+	}
+
+	@Test
+	void addingSameKeyReplacesValue() {
+
+		BkTree<String> tree = new BkTree<>();
+		tree.add(42L, "old");
+		tree.add(42L, "new");
+
+		assertThat(tree.size()).isEqualTo(1);
+		assertThat(tree.nearest(42L, 0)).hasValueSatisfying(match -> assertThat(match.value()).isEqualTo("new"));
+	}
+
+	@Test
+	void nearestMatchesBruteForceSearch() {
+
+		SplittableRandom random = new SplittableRandom(7);
+		BkTree<Integer> tree = new BkTree<>();
+		List<Long> keys = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			long key = random.nextLong();
+			keys.add(key);
+			tree.add(key, i);
+		}
+
+		for (int i = 0; i < 500; i++) {
+			// Queries close to a stored key, as well as random ones that are usually far from all of them
+			long query = i % 2 == 0
+					? keys.get(random.nextInt(keys.size())) ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64))
+					: random.nextLong();
+			int radius = 1 + random.nextInt(24);
+			int closest = keys.stream().mapToInt(key -> BkTree.distance(key, query)).min().orElseThrow();
+
+			if (closest <= radius) {
+				assertThat(tree.nearest(query, radius))
+						.hasValueSatisfying(match -> assertThat(match.distance()).isEqualTo(closest));
+			} else {
+				assertThat(tree.nearest(query, radius)).isEmpty();
+			}
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CountMinSketchTests {
+
+	@Test
+	void countsEveryAddition() {
+
+		CountMinSketch sketch = new CountMinSketch(4, 1024);
+
+		for (int i = 1; i <= 5; i++) {
+			assertThat(sketch.add("what is the capital")).isEqualTo(i);
+		}
+
+		assertThat(sketch.estimate("what is the capital")).isEqualTo(5);
+		assertThat(sketch.estimate("never asked")).isZero();
+	}
+
+	@Test
+	void neverUndercountsWhenKeysCollide() {
+
+		// Far more keys than counters per row, so most counters are shared
+		CountMinSketch sketch = new CountMinSketch(2, 16);
+		IntStream.range(0, 500).forEach(i -> sketch.add("question " + i));
+		for (int i = 0; i < 7; i++) {
+			sketch.add("hot question");
+		}
+
+		assertThat(sketch.estimate("hot question")).isGreaterThanOrEqualTo(7);
+		IntStream.range(0, 500).forEach(i -> assertThat(sketch.estimate("question " + i)).isGreaterThanOrEqualTo(1));
+	}
+
+	@Test
+	void overcountStaysWithinTheErrorBound() {
+
+		int width = 1024;
+		int additions = 5000;
+		CountMinSketch sketch = new CountMinSketch(4, width);
+		IntStream.range(0, additions).forEach(i -> sketch.add("question " + i));
+
+		// e / width of all additions, exceeded with probability e^-4 per key
+		long bound = (long) Math.ceil(Math.E / width * additions);
+		long exceeding = IntStream.range(0, additions)
+				.filter(i -> sketch.estimate("question " + i) - 1 > bound)
+				.count();
+		assertThat(exceeding).isLessThan(additions / 20);
+	}
+
+	@Test
+	void decayHalvesTheCounts() {
+
+		CountMinSketch sketch = new CountMinSketch(4, 1024);
+		for (int i = 0; i < 9; i++) {
+			sketch.add("hot question");
+		}
+		sketch.add("cold question");
+
+		sketch.decay();
+
+		assertThat(sketch.estimate("hot question")).isEqualTo(4);
+		assertThat(sketch.estimate("cold question")).isZero();
+	}
+
+	@Test
+	void rejectsEmptyDimensions() {
+
+		assertThatThrownBy(() -> new CountMinSketch(0, 16)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new CountMinSketch(4, 0)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,126 @@
+package com.example.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.OptionalLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PerceptualHashTests {
+
+	// image.description-cache.max-distance
+	private static final int MAX_DISTANCE = 6;
+
+	@Test
+	void resizedAndReencodedCopiesStayClose() throws IOException {
+
+		BufferedImage original = scene(1200, 900, 1);
+		long hash = hash(encode(original, "png"));
+
+		for (int width : new int[]{800, 400, 160}) {
+			BufferedImage resized = resize(original, width, width * 3 / 4);
+			assertThat(BkTree.distance(hash, hash(encode(resized, "png")))).isLessThanOrEqualTo(MAX_DISTANCE);
+			assertThat(BkTree.distance(hash, hash(encode(resized, "jpeg")))).isLessThanOrEqualTo(MAX_DISTANCE);
+		}
+	}
+
+	@Test
+	void smoothGradientsStayCloseAcrossSizes() throws IOException {
+		// Photos are mostly gradients, where point sampling while shrinking flips bits between sizes
+		BufferedImage original = new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < original.getHeight(); y++) {
+			for (int x = 0; x < original.getWidth(); x++) {
+				int value = (int) Math.clamp(128 + 60 * Math.sin(x / 97.0) + 50 * Math.cos(y / 71.0 + x / 300.0), 0, 255);
+				original.setRGB(x, y, new Color(value, (value * 3) % 256, 255 - value).getRGB());
+			}
+		}
+		long hash = hash(encode(original, "png"));
+
+		for (int width : new int[]{800, 400, 160}) {
+			BufferedImage resized = resize(original, width, width * 3 / 4);
+			assertThat(BkTree.distance(hash, hash(encode(resized, "jpeg")))).isLessThanOrEqualTo(2);
+		}
+	}
+
+	@Test
+	void differentImagesAreFarApart() throws IOException {
+
+		long first = hash(encode(scene(800, 600, 1), "png"));
+		long second = hash(encode(scene(800, 600, 2), "png"));
+
+		assertThat(BkTree.distance(first, second)).isGreaterThan(MAX_DISTANCE);
+	}
+
+	@Test
+	void largeImagesHashLikeTheirFullResolutionDecode() throws IOException {
+		// Subsampled decoding must not move the hash away from one of the fully decoded image
+		BufferedImage original = scene(4000, 3000, 3);
+
+		assertThat(BkTree.distance(PerceptualHash.dHash(original), hash(encode(original, "png"))))
+				.isLessThanOrEqualTo(MAX_DISTANCE);
+	}
+
+	@Test
+	void unreadableDataHasNoHash() {
+
+		assertThat(PerceptualHash.dHash(new byte[]{1, 2, 3, 4})).isEqualTo(OptionalLong.empty());
+	}
+
+	private static long hash(byte[] data) {
+
+		return PerceptualHash.dHash(data).orElseThrow();
+	}
+
+	/**
+	 * Blocks and a diagonal at positions derived from the seed, so that every seed gives a distinct layout.
+	 */
+	private static BufferedImage scene(int width, int height, int seed) {
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, width, height);
+			for (int i = 0; i < 6; i++) {
+				int shade = (seed * 97 + i * 53) % 256;
+				graphics.setColor(new Color(shade, 255 - shade, (shade * 7) % 256));
+				int x = ((seed * 31 + i * 17) % 9) * width / 10;
+				int y = ((seed * 13 + i * 29) % 7) * height / 8;
+				graphics.fillRect(x, y, width / 5, height / 4);
+			}
+			graphics.setColor(Color.BLACK);
+			graphics.setStroke(new java.awt.BasicStroke(width / 40f));
+			graphics.drawLine(seed % 2 == 0 ? 0 : width, 0, seed % 2 == 0 ? width : 0, height);
+		} finally {
+			graphics.dispose();
+		}
+		return image;
+	}
+
+	private static BufferedImage resize(BufferedImage image, int width, int height) {
+
+		BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = resized.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			graphics.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+		return resized;
+	}
+
+	private static byte[] encode(BufferedImage image, String format) throws IOException {
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(image, format, output);
+		return output.toByteArray();
+	}
+}